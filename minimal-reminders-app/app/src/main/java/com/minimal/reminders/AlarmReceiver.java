@@ -1,105 +1,71 @@
 package com.minimal.reminders;
 
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.media.AudioAttributes;
-import android.media.RingtoneManager;
-import android.net.Uri;
 
-public class AlarmReceiver extends BroadcastReceiver {
-
-    private static final String CHANNEL_ID = "reminders_v2";
-    private static final String OLD_CHANNEL_ID = "reminders";
+import java.util.List;
 
+public class AlarmReceiver extends BroadcastReceiver {
     @Override
     public void onReceive(Context ctx, Intent intent) {
-        int id = intent.getIntExtra("reminder_id", -1);
-        String name = intent.getStringExtra("reminder_name");
-        if (name == null) name = "Reminder";
-
-        createChannel(ctx);
-
-        // Dismiss action
-        Intent dismissIntent = new Intent(ctx, NotificationActionReceiver.class);
-        dismissIntent.setAction("DISMISS");
-        dismissIntent.putExtra("notification_id", id);
-        PendingIntent dismissPi = PendingIntent.getBroadcast(ctx, id * 100 + 1, dismissIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-
-        // Snooze action
-        Intent snoozeIntent = new Intent(ctx, NotificationActionReceiver.class);
-        snoozeIntent.setAction("SNOOZE");
-        snoozeIntent.putExtra("notification_id", id);
-        snoozeIntent.putExtra("reminder_id", id);
-        snoozeIntent.putExtra("reminder_name", name);
-        PendingIntent snoozePi = PendingIntent.getBroadcast(ctx, id * 100 + 2, snoozeIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-
-        // Auto-snooze when notification is swiped away
-        Intent swipeSnoozeIntent = new Intent(ctx, NotificationActionReceiver.class);
-        swipeSnoozeIntent.setAction("SNOOZE");
-        swipeSnoozeIntent.putExtra("notification_id", id);
-        swipeSnoozeIntent.putExtra("reminder_id", id);
-        swipeSnoozeIntent.putExtra("reminder_name", name);
-        PendingIntent swipeSnoozePi = PendingIntent.getBroadcast(ctx, id * 100 + 4, swipeSnoozeIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-
-        // Content intent - open the app
-        Intent openIntent = new Intent(ctx, MainActivity.class);
-        PendingIntent openPi = PendingIntent.getActivity(ctx, id * 100 + 3, openIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-
-        Uri notifSound = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
-
-        android.app.Notification notification = new android.app.Notification.Builder(ctx, CHANNEL_ID)
-                .setSmallIcon(android.R.drawable.ic_lock_idle_alarm)
-                .setContentTitle(name)
-                .setContentText("Reminder triggered")
-                .setContentIntent(openPi)
-                .setDeleteIntent(swipeSnoozePi)
-                .setAutoCancel(true)
-                .setSound(notifSound)
-                .addAction(android.R.drawable.ic_menu_close_clear_cancel, "Dismiss", dismissPi)
-                .addAction(android.R.drawable.ic_popup_reminder, "Snooze (10 min)", snoozePi)
-                .setPriority(android.app.Notification.PRIORITY_HIGH)
-                .setDefaults(android.app.Notification.DEFAULT_VIBRATE)
-                .build();
+        long receivedAt = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        // Store lookups, notification building and rescheduling all run on
+        // the pipeline thread; onReceive returns straight away.
+        Context app = ctx.getApplicationContext();
+        PendingResult result = goAsync();
+        Pipeline.execute(result, task -> {
+            List<Reminder> fired = handle(app, intent, task);
+            recordLatency(app, intent, fired, receivedAt, startNanos);
+            if (!fired.isEmpty()) EventHistory.record(app, fired, EventLog.FIRE);
+        });
+    }
 
-        NotificationManager nm = (NotificationManager) ctx.getSystemService(Context.NOTIFICATION_SERVICE);
-        if (nm != null) {
-            nm.notify(id, notification);
+    private List<Reminder> handle(Context ctx, Intent intent, Pipeline.Task task) {
+        // An alarm can wake the process before an interrupted boot re-arm was finished
+        AlarmScheduler.resumeBoot(ctx);
+
+        Notifier.ensureChannel(ctx);
+        task.mark(Pipeline.STAGE_CHANNEL);
+
+        List<Reminder> fired;
+        if (AlarmScheduler.ACTION_DUE.equals(intent.getAction())) {
+            fired = AlarmScheduler.dispatchDue(ctx);
+            task.mark(Pipeline.STAGE_LOOKUP);
+        } else if (AlarmScheduler.ACTION_SNOOZE.equals(intent.getAction())) {
+            fired = AlarmScheduler.dispatchSnoozes(ctx);
+            task.mark(Pipeline.STAGE_LOOKUP);
+        } else {
+            int id = intent.getIntExtra("reminder_id", -1);
+            String name = intent.getStringExtra("reminder_name");
+            // Reschedules the recurring alarm in per-day mode
+            long triggerAt = intent.getLongExtra("trigger_at", System.currentTimeMillis());
+            fired = AlarmScheduler.onReminderAlarm(ctx, id, name, triggerAt);
+            task.mark(Pipeline.STAGE_RESCHEDULE);
         }
 
-        // Reschedule recurring alarm for next week
-        ReminderStore store = new ReminderStore(ctx);
-        Reminder r = store.findById(id);
-        if (r != null) {
-            AlarmScheduler.schedule(ctx, r);
+        if (!fired.isEmpty()) {
+            Notifier.enqueue(ctx, fired, task.detach());
         }
+        task.mark(Pipeline.STAGE_NOTIFY);
+        return fired;
     }
 
-    private void createChannel(Context ctx) {
-        NotificationManager nm = (NotificationManager) ctx.getSystemService(Context.NOTIFICATION_SERVICE);
-        if (nm == null) return;
-
-        // Delete old channel that used alarm ringtone (looping sound)
-        nm.deleteNotificationChannel(OLD_CHANNEL_ID);
-
-        Uri notifSound = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
-        AudioAttributes audioAttr = new AudioAttributes.Builder()
-                .setUsage(AudioAttributes.USAGE_NOTIFICATION)
-                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
-                .build();
-
-        NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "Reminders",
-                NotificationManager.IMPORTANCE_HIGH);
-        channel.setDescription("Reminder notifications");
-        channel.setSound(notifSound, audioAttr);
-        channel.enableVibration(true);
-        nm.createNotificationChannel(channel);
+    // Lag is measured against the trigger time the alarm was set for; alarms
+    // set before trigger_at was added are skipped.
+    private void recordLatency(Context ctx, Intent intent, List<Reminder> fired,
+                               long receivedAt, long startNanos) {
+        long triggerAt = intent.getLongExtra("trigger_at", -1);
+        if (triggerAt < 0) return;
+        long lag = receivedAt - triggerAt;
+        long handlerMicros = (System.nanoTime() - startNanos) / 1000;
+        if (fired.isEmpty()) {
+            FireStats.record(0, lag, handlerMicros);
+        }
+        for (Reminder r : fired) {
+            FireStats.record(r.id, lag, handlerMicros);
+        }
+        FireStats.flush(ctx);
     }
 }
@@ -4,110 +4,235 @@ import android.app.AlarmManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Build;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.util.Log;
 
-import java.util.Calendar;
+import java.io.File;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+// Android side of ReminderScheduler: one process-wide instance on top of
+// AlarmManager, SharedPreferences and the shared ReminderStore.
 public class AlarmScheduler {
 
-    public static void schedule(Context ctx, Reminder r) {
-        if (!r.enabled) {
-            cancel(ctx, r);
-            return;
+    public static final int MODE_PER_DAY = ReminderScheduler.MODE_PER_DAY;
+    public static final int MODE_SINGLE = ReminderScheduler.MODE_SINGLE;
+
+    public static final String ACTION_DUE = "com.minimal.reminders.DUE";
+    public static final String ACTION_SNOOZE = "com.minimal.reminders.SNOOZE";
+
+    private static final String PREFS = "scheduler";
+    private static final String TAG = "AlarmScheduler";
+
+    private static ReminderScheduler scheduler;
+    // Times setExactAndAllowWhileIdle was refused and an inexact alarm used
+    private static final AtomicInteger inexactFallbacks = new AtomicInteger();
+
+    private static synchronized ReminderScheduler get(Context ctx) {
+        if (scheduler == null) {
+            Context app = ctx.getApplicationContext();
+            scheduler = new ReminderScheduler(
+                    new ReminderStore(app).getRepository(),
+                    new PrefsKeyValueStore(app.getSharedPreferences(PREFS, Context.MODE_PRIVATE)),
+                    new AndroidAlarms(app),
+                    new ReminderScheduler.Clock() {
+                        @Override
+                        public long now() {
+                            return System.currentTimeMillis();
+                        }
+
+                        @Override
+                        public long elapsed() {
+                            return SystemClock.elapsedRealtime();
+                        }
+                    },
+                    new ArmedSlots(new File(app.getFilesDir(), "armed.bin")),
+                    new SnoozeQueue(new File(app.getFilesDir(), "snoozes.bin")));
         }
+        return scheduler;
+    }
 
-        AlarmManager am = (AlarmManager) ctx.getSystemService(Context.ALARM_SERVICE);
-        if (am == null) return;
+    public static int getMode(Context ctx) {
+        return get(ctx).getMode();
+    }
 
-        // Schedule one alarm for each active day
-        for (int day = 0; day < 7; day++) {
-            if (!r.days[day]) {
-                cancelDay(ctx, r.id, day);
-                continue;
-            }
+    public static void setMode(Context ctx, int mode) {
+        get(ctx).setMode(mode);
+    }
 
-            int requestCode = r.id * 10 + day;
-            Intent intent = new Intent(ctx, AlarmReceiver.class);
-            intent.putExtra("reminder_id", r.id);
-            intent.putExtra("reminder_name", r.name);
+    public static void schedule(Context ctx, Reminder r) {
+        get(ctx).schedule(r);
+    }
 
-            PendingIntent pi = PendingIntent.getBroadcast(ctx, requestCode, intent,
-                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    public static void cancel(Context ctx, Reminder r) {
+        get(ctx).cancel(r);
+    }
 
-            Calendar cal = getNextAlarmTime(r.hour, r.minute, day);
+    // Called when the MODE_SINGLE alarm fires; returns the reminders to notify
+    public static List<Reminder> dispatchDue(Context ctx) {
+        return get(ctx).dispatchDue();
+    }
 
-            try {
-                am.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, cal.getTimeInMillis(), pi);
-            } catch (SecurityException e) {
-                // Fallback if exact alarms not permitted
-                am.set(AlarmManager.RTC_WAKEUP, cal.getTimeInMillis(), pi);
-            }
-        }
+    // Called when a reminder's own alarm fired (per-day slot or snooze)
+    public static List<Reminder> onReminderAlarm(Context ctx, int id, String name, long triggerAt) {
+        return get(ctx).onReminderAlarm(id, name, triggerAt);
     }
 
-    public static void cancel(Context ctx, Reminder r) {
-        for (int day = 0; day < 7; day++) {
-            cancelDay(ctx, r.id, day);
-        }
+    // Called when the snooze queue's alarm fires; returns the reminders to notify
+    public static List<Reminder> dispatchSnoozes(Context ctx) {
+        return get(ctx).dispatchSnoozes();
     }
 
-    private static void cancelDay(Context ctx, int reminderId, int day) {
-        AlarmManager am = (AlarmManager) ctx.getSystemService(Context.ALARM_SERVICE);
-        if (am == null) return;
-        int requestCode = reminderId * 10 + day;
-        Intent intent = new Intent(ctx, AlarmReceiver.class);
-        PendingIntent pi = PendingIntent.getBroadcast(ctx, requestCode, intent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-        am.cancel(pi);
-    }
-
-    // day: 0=Mon..6=Sun -> Calendar: Mon=2..Sun=1
-    private static Calendar getNextAlarmTime(int hour, int minute, int dayIndex) {
-        int[] calDays = {Calendar.MONDAY, Calendar.TUESDAY, Calendar.WEDNESDAY,
-                Calendar.THURSDAY, Calendar.FRIDAY, Calendar.SATURDAY, Calendar.SUNDAY};
-
-        Calendar now = Calendar.getInstance();
-        Calendar cal = Calendar.getInstance();
-        cal.set(Calendar.HOUR_OF_DAY, hour);
-        cal.set(Calendar.MINUTE, minute);
-        cal.set(Calendar.SECOND, 0);
-        cal.set(Calendar.MILLISECOND, 0);
-        cal.set(Calendar.DAY_OF_WEEK, calDays[dayIndex]);
-
-        // If this time already passed this week, schedule for next week
-        if (cal.before(now) || cal.equals(now)) {
-            cal.add(Calendar.WEEK_OF_YEAR, 1);
-        }
+    public static void scheduleSnooze(Context ctx, int reminderId, String name) {
+        get(ctx).scheduleSnooze(reminderId, name);
+    }
 
-        return cal;
+    public static void scheduleSnooze(Context ctx, List<Reminder> reminders, long delayMs) {
+        get(ctx).scheduleSnooze(reminders, delayMs);
     }
 
-    public static void scheduleSnooze(Context ctx, int reminderId, String name) {
+    public static long getSnoozeMs(Context ctx) {
+        return get(ctx).getSnoozeMs();
+    }
+
+    public static void setSnoozeMs(Context ctx, long ms) {
+        get(ctx).setSnoozeMs(ms);
+    }
+
+    // Time of the next occurrence of any reminder, read from the agenda
+    // without a pass over the list; -1 if none is coming up
+    public static long getNextOccurrence(Context ctx) {
+        long next = new ReminderStore(ctx).getAgenda().first(System.currentTimeMillis());
+        return next >= 0 ? Agenda.timeOf(next) : -1;
+    }
+
+    public static int getPendingSnoozes(Context ctx) {
+        return get(ctx).getPendingSnoozes();
+    }
+
+    public static void rescheduleAll(Context ctx) {
+        get(ctx).rescheduleAll();
+    }
+
+    // Called on the pipeline thread after BOOT_COMPLETED
+    public static void rearmAfterBoot(Context ctx) {
+        int count = get(ctx).rearmAfterBoot(bootCount(ctx));
+        logBootRearm(ctx, count);
+    }
+
+    // Finishes a boot re-arm that an earlier process did not get to complete
+    public static void resumeBoot(Context ctx) {
+        int count = get(ctx).resumeBoot(bootCount(ctx));
+        if (count >= 0) logBootRearm(ctx, count);
+    }
+
+    public static long getLastBootRearmMs(Context ctx) {
+        return get(ctx).getLastBootRearmMs();
+    }
+
+    public static int getInexactFallbacks() {
+        return inexactFallbacks.get();
+    }
+
+    // AlarmManager set/cancel calls made, and skipped as already in effect
+    public static long getAlarmCallsMade(Context ctx) {
+        return get(ctx).getAlarmCallsMade();
+    }
+
+    public static long getAlarmCallsSaved(Context ctx) {
+        return get(ctx).getAlarmCallsSaved();
+    }
+
+    // Alarm deliveries, and the wakeups exact alarms would have taken
+    public static long getWakeups(Context ctx) {
+        return get(ctx).getWakeups();
+    }
+
+    public static long getExactWakeups(Context ctx) {
+        return get(ctx).getExactWakeups();
+    }
+
+    public static long getWakeStatsSince(Context ctx) {
+        return get(ctx).getWakeStatsSince();
+    }
+
+    public static boolean canScheduleExact(Context ctx) {
+        if (Build.VERSION.SDK_INT < 31) return true;
         AlarmManager am = (AlarmManager) ctx.getSystemService(Context.ALARM_SERVICE);
-        if (am == null) return;
+        return am != null && am.canScheduleExactAlarms();
+    }
 
-        int requestCode = reminderId * 10 + 8; // 8 = snooze slot
-        Intent intent = new Intent(ctx, AlarmReceiver.class);
-        intent.putExtra("reminder_id", reminderId);
-        intent.putExtra("reminder_name", name);
+    private static void logBootRearm(Context ctx, int count) {
+        Log.i(TAG, "Re-armed " + count + " reminders after boot in "
+                + getLastBootRearmMs(ctx) + " ms");
+    }
 
-        PendingIntent pi = PendingIntent.getBroadcast(ctx, requestCode, intent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    private static int bootCount(Context ctx) {
+        return Settings.Global.getInt(ctx.getContentResolver(), Settings.Global.BOOT_COUNT, 0);
+    }
 
-        long triggerAt = System.currentTimeMillis() + 10 * 60 * 1000; // 10 minutes
+    // Slots map to PendingIntent request codes. SLOT_DUE carries ACTION_DUE
+    // and SLOT_SNOOZE ACTION_SNOOZE; reminder slots carry the reminder in
+    // extras (ignored when cancelling).
+    private static class AndroidAlarms implements ReminderScheduler.Alarms {
+        private final Context ctx;
 
-        try {
-            am.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAt, pi);
-        } catch (SecurityException e) {
-            am.set(AlarmManager.RTC_WAKEUP, triggerAt, pi);
+        AndroidAlarms(Context ctx) {
+            this.ctx = ctx;
         }
-    }
 
-    public static void rescheduleAll(Context ctx) {
-        ReminderStore store = new ReminderStore(ctx);
-        List<Reminder> all = store.loadAll();
-        for (Reminder r : all) {
-            schedule(ctx, r);
+        @Override
+        public void set(int slot, long triggerAt, long windowMs, int reminderId, String name) {
+            AlarmManager am = (AlarmManager) ctx.getSystemService(Context.ALARM_SERVICE);
+            if (am == null) return;
+            Intent intent = intent(slot);
+            // Lets AlarmReceiver measure how late the alarm arrives
+            intent.putExtra("trigger_at", triggerAt);
+            if (slot != ReminderScheduler.SLOT_DUE && slot != ReminderScheduler.SLOT_SNOOZE) {
+                intent.putExtra("reminder_id", reminderId);
+                intent.putExtra("reminder_name", name);
+            }
+            PendingIntent pi = PendingIntent.getBroadcast(ctx, slot, intent,
+                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+            if (windowMs > 0) {
+                // Batched with other wakeups in the window; needs no exact
+                // alarm permission, but Doze may hold it to a maintenance window.
+                // ReminderScheduler never asks for less than MIN_WINDOW_MS,
+                // which Android 12 and later would round up.
+                am.setWindow(AlarmManager.RTC_WAKEUP, triggerAt, windowMs, pi);
+                return;
+            }
+            try {
+                am.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAt, pi);
+            } catch (SecurityException e) {
+                // Fallback if exact alarms not permitted
+                inexactFallbacks.incrementAndGet();
+                am.set(AlarmManager.RTC_WAKEUP, triggerAt, pi);
+            }
+        }
+
+        @Override
+        public void cancel(int slot) {
+            AlarmManager am = (AlarmManager) ctx.getSystemService(Context.ALARM_SERVICE);
+            if (am == null) return;
+            PendingIntent pi = PendingIntent.getBroadcast(ctx, slot, intent(slot),
+                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+            am.cancel(pi);
+        }
+
+        @Override
+        public boolean isSet(int slot) {
+            return PendingIntent.getBroadcast(ctx, slot, intent(slot),
+                    PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE) != null;
+        }
+
+        private Intent intent(int slot) {
+            Intent intent = new Intent(ctx, AlarmReceiver.class);
+            if (slot == ReminderScheduler.SLOT_DUE) intent.setAction(ACTION_DUE);
+            if (slot == ReminderScheduler.SLOT_SNOOZE) intent.setAction(ACTION_SNOOZE);
+            return intent;
         }
     }
 }
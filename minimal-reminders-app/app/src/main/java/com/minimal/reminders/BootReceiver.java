@@ -8,7 +8,11 @@ public class BootReceiver extends BroadcastReceiver {
     @Override
     public void onReceive(Context ctx, Intent intent) {
         if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
-            AlarmScheduler.rescheduleAll(ctx);
+            // Re-arming can take a while with many reminders; keep it off
+            // the main thread during the busy boot window.
+            Context app = ctx.getApplicationContext();
+            PendingResult result = goAsync();
+            Pipeline.execute(result, task -> AlarmScheduler.rearmAfterBoot(app));
         }
     }
 }
@@ -0,0 +1,250 @@
+package com.minimal.reminders;
+
+import android.app.Activity;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.provider.OpenableColumns;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.Spinner;
+import android.widget.TextView;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.ToLongFunction;
+
+// Alarm delivery latency, snooze counts, receiver pipeline timings and store
+// statistics, as text that can be shared. Opened by long-pressing the main
+// screen title.
+// Also imports and exports the reminder list through the system file picker
+// (ReminderTransfer format), and holds the app-wide settings.
+public class DiagnosticsActivity extends Activity {
+    private static final int REQUEST_IMPORT = 1;
+    private static final int REQUEST_EXPORT = 2;
+
+    private static final String[] SNOOZE_LABELS = {"5 minutes", "10 minutes", "15 minutes", "30 minutes", "1 hour"};
+    private static final long[] SNOOZE_MS = {5 * 60000L, 10 * 60000L, 15 * 60000L, 30 * 60000L, 60 * 60000L};
+    // 0 groups only the reminders delivered by the same alarm
+    private static final String[] BURST_LABELS = {"Same alarm", "1 second", "2 seconds", "4 seconds", "8 seconds"};
+    private static final long[] BURST_WINDOW_MS = {0, 1000, 2000, 4000, 8000};
+
+    private TextView text;
+    private String dump = "";
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_diagnostics);
+
+        text = findViewById(R.id.diag_text);
+        text.setText("Loading...");
+
+        findViewById(R.id.btn_export).setOnClickListener(v -> {
+            Intent send = new Intent(Intent.ACTION_SEND);
+            send.setType("text/plain");
+            send.putExtra(Intent.EXTRA_SUBJECT, "Reminders diagnostics");
+            send.putExtra(Intent.EXTRA_TEXT, dump);
+            startActivity(Intent.createChooser(send, "Export diagnostics"));
+        });
+
+        findViewById(R.id.btn_reset).setOnClickListener(v -> {
+            Context app = getApplicationContext();
+            WeakReference<DiagnosticsActivity> screen = new WeakReference<>(this);
+            Pipeline.execute(() -> {
+                FireStats.clear(app);
+                refresh(app, screen);
+            });
+        });
+
+        findViewById(R.id.btn_import_reminders).setOnClickListener(v -> {
+            Intent open = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+            open.addCategory(Intent.CATEGORY_OPENABLE);
+            open.setType("text/*");
+            startActivityForResult(open, REQUEST_IMPORT);
+        });
+
+        findViewById(R.id.btn_export_reminders).setOnClickListener(v -> {
+            Intent create = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+            create.addCategory(Intent.CATEGORY_OPENABLE);
+            create.setType("text/plain");
+            create.putExtra(Intent.EXTRA_TITLE, "reminders.txt");
+            startActivityForResult(create, REQUEST_EXPORT);
+        });
+
+        bindSetting(R.id.diag_snooze, SNOOZE_LABELS, SNOOZE_MS,
+                AlarmScheduler::getSnoozeMs, AlarmScheduler::setSnoozeMs);
+        bindSetting(R.id.diag_burst_window, BURST_LABELS, BURST_WINDOW_MS,
+                Notifier::getBurstWindow, Notifier::setBurstWindow);
+
+        Context app = getApplicationContext();
+        WeakReference<DiagnosticsActivity> screen = new WeakReference<>(this);
+        Pipeline.execute(() -> refresh(app, screen));
+    }
+
+    // Offers "values" (shown as "labels") in a spinner. The current value is
+    // read on the pipeline, since it may need the scheduler loaded, and the
+    // spinner takes choices only once it shows it.
+    private void bindSetting(int spinnerId, String[] labels, long[] values,
+                             ToLongFunction<Context> current, ObjLongConsumer<Context> save) {
+        Spinner spinner = findViewById(spinnerId);
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(this,
+                android.R.layout.simple_spinner_item, labels);
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinner.setAdapter(adapter);
+        spinner.setEnabled(false);
+        Context app = getApplicationContext();
+        WeakReference<DiagnosticsActivity> screen = new WeakReference<>(this);
+        Pipeline.execute(() -> {
+            long value = current.applyAsLong(app);
+            onUiThread(screen, a -> {
+                Spinner s = a.findViewById(spinnerId);
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i] == value) s.setSelection(i, false);
+                }
+                s.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+                    @Override
+                    public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                        long chosen = values[position];
+                        Pipeline.execute(() -> save.accept(app, chosen));
+                    }
+
+                    @Override
+                    public void onNothingSelected(AdapterView<?> parent) {
+                    }
+                });
+                s.setEnabled(true);
+            });
+        });
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        if (resultCode != RESULT_OK || data == null || data.getData() == null) return;
+        Uri uri = data.getData();
+        Context app = getApplicationContext();
+        // A transfer can run for seconds; it must not keep a closed screen
+        WeakReference<DiagnosticsActivity> screen = new WeakReference<>(this);
+        if (requestCode == REQUEST_IMPORT) {
+            Pipeline.execute(() -> importReminders(app, uri, screen));
+        } else if (requestCode == REQUEST_EXPORT) {
+            Pipeline.execute(() -> exportReminders(app, uri, screen));
+        }
+    }
+
+    private static void importReminders(Context ctx, Uri uri, WeakReference<DiagnosticsActivity> screen) {
+        ContentResolver resolver = ctx.getContentResolver();
+        long total = size(resolver, uri);
+        String result;
+        try (InputStream in = resolver.openInputStream(uri)) {
+            if (in == null) throw new IOException("Cannot open " + uri);
+            int count = new ReminderStore(ctx).importFrom(in, (bytes, reminders) -> showStatus(screen,
+                    "Importing: " + reminders + " reminders" + percent(bytes, total)));
+            showStatus(screen, "Scheduling " + count + " reminders...");
+            // One pass for the whole batch
+            AlarmScheduler.rescheduleAll(ctx);
+            result = "Imported " + count + " reminders";
+        } catch (IOException | RuntimeException e) {
+            result = "Import failed, nothing was added: " + e.getMessage();
+        }
+        finishTransfer(ctx, screen, result);
+    }
+
+    private static void exportReminders(Context ctx, Uri uri, WeakReference<DiagnosticsActivity> screen) {
+        ReminderStore store = new ReminderStore(ctx);
+        int total = store.getRepository().getStats().size;
+        String result;
+        try (OutputStream out = ctx.getContentResolver().openOutputStream(uri)) {
+            if (out == null) throw new IOException("Cannot open " + uri);
+            int count = store.exportTo(out, (bytes, reminders) -> showStatus(screen,
+                    "Exporting: " + reminders + " reminders" + percent(reminders, total)));
+            result = "Exported " + count + " reminders";
+        } catch (IOException | RuntimeException e) {
+            result = "Export failed: " + e.getMessage();
+        }
+        finishTransfer(ctx, screen, result);
+    }
+
+    // Runs on the pipeline thread, right after the transfer
+    private static void finishTransfer(Context ctx, WeakReference<DiagnosticsActivity> screen, String result) {
+        showStatus(screen, result);
+        String stats = collect(ctx);
+        onUiThread(screen, a -> {
+            a.dump = stats;
+            a.text.setText(result + "\n\n" + stats);
+        });
+    }
+
+    private static void showStatus(WeakReference<DiagnosticsActivity> screen, String status) {
+        onUiThread(screen, a -> a.text.setText(status));
+    }
+
+    // Background work holds the screen weakly and may outlive it; its
+    // results are then dropped
+    private static void onUiThread(WeakReference<DiagnosticsActivity> screen,
+                                   Consumer<DiagnosticsActivity> action) {
+        DiagnosticsActivity a = screen.get();
+        if (a == null) return;
+        a.runOnUiThread(() -> {
+            if (!a.isFinishing() && !a.isDestroyed()) action.accept(a);
+        });
+    }
+
+    private static String percent(long done, long total) {
+        return total > 0 ? " (" + Math.min(100, done * 100 / total) + "%)" : "";
+    }
+
+    // The document's size in bytes, or -1 if the provider does not say
+    private static long size(ContentResolver resolver, Uri uri) {
+        try (Cursor c = resolver.query(uri, new String[]{OpenableColumns.SIZE}, null, null, null)) {
+            if (c != null && c.moveToFirst() && !c.isNull(0)) return c.getLong(0);
+        } catch (RuntimeException e) {
+            // Only used for progress
+        }
+        return -1;
+    }
+
+    // Runs on the pipeline thread
+    private static void refresh(Context ctx, WeakReference<DiagnosticsActivity> screen) {
+        String stats = collect(ctx);
+        onUiThread(screen, a -> {
+            a.dump = stats;
+            a.text.setText(stats);
+        });
+    }
+
+    private static String collect(Context ctx) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Exact alarms allowed: ").append(AlarmScheduler.canScheduleExact(ctx) ? "yes" : "no")
+                .append('\n');
+        sb.append("Inexact fallbacks since start: ").append(AlarmScheduler.getInexactFallbacks())
+                .append('\n');
+        sb.append("Alarm calls since start: ").append(AlarmScheduler.getAlarmCallsMade(ctx))
+                .append(" made, ").append(AlarmScheduler.getAlarmCallsSaved(ctx)).append(" saved\n");
+        double wakeDays = Math.max(60 * 60 * 1000L,
+                System.currentTimeMillis() - AlarmScheduler.getWakeStatsSince(ctx)) / (24 * 60 * 60 * 1000.0);
+        sb.append(String.format(Locale.ROOT, "Wakeups per day: %.1f, %.1f if all exact (%.1f days)\n",
+                AlarmScheduler.getWakeups(ctx) / wakeDays, AlarmScheduler.getExactWakeups(ctx) / wakeDays,
+                wakeDays));
+        long next = AlarmScheduler.getNextOccurrence(ctx);
+        sb.append("Next occurrence: ").append(next >= 0
+                ? "in " + (next - System.currentTimeMillis()) / 60000 + " min" : "none").append('\n');
+        sb.append("Pending snoozes: ").append(AlarmScheduler.getPendingSnoozes(ctx)).append('\n');
+        sb.append("Last boot re-arm: ").append(AlarmScheduler.getLastBootRearmMs(ctx)).append(" ms\n");
+        sb.append("\n== Fire latency ==\n").append(FireStats.dump(ctx));
+        sb.append("\n== Snoozes ==\n").append(EventHistory.dump(ctx));
+        sb.append("\n== Receiver pipeline ==\n").append(Pipeline.getStats()).append('\n');
+        sb.append("Binder calls: ").append(Notifier.getBinderStats()).append('\n');
+        sb.append("\n== Store ==\n").append(ReminderStore.getStats()).append('\n');
+        return sb.toString();
+    }
+}
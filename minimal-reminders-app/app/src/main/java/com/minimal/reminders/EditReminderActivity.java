@@ -2,13 +2,20 @@ package com.minimal.reminders;
 
 import android.app.Activity;
 import android.app.TimePickerDialog;
+import android.content.Context;
 import android.os.Bundle;
+import android.widget.ArrayAdapter;
 import android.widget.CheckBox;
 import android.widget.EditText;
+import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
 public class EditReminderActivity extends Activity {
+    // Labels for Reminder.TOLERANCES
+    private static final String[] TOLERANCE_LABELS = {
+            "On time", "Within 30 minutes", "Within 1 hour", "Within 2 hours"};
+
     private ReminderStore store;
     private Reminder reminder;
     private boolean isNew;
@@ -16,6 +23,7 @@ public class EditReminderActivity extends Activity {
     private EditText nameEdit;
     private TextView timeDisplay;
     private CheckBox[] dayChecks = new CheckBox[7];
+    private Spinner toleranceSpinner;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -33,6 +41,7 @@ public class EditReminderActivity extends Activity {
         dayChecks[4] = findViewById(R.id.day_fri);
         dayChecks[5] = findViewById(R.id.day_sat);
         dayChecks[6] = findViewById(R.id.day_sun);
+        toleranceSpinner = findViewById(R.id.edit_tolerance);
 
         int reminderId = getIntent().getIntExtra("reminder_id", -1);
         if (reminderId != -1) {
@@ -41,13 +50,13 @@ public class EditReminderActivity extends Activity {
         }
 
         if (reminder == null) {
+            // The id is allocated on save: it may need the whole list loaded
             reminder = new Reminder();
-            reminder.id = store.nextId();
             reminder.name = "";
             reminder.hour = 8;
             reminder.minute = 0;
             // Default to every day
-            for (int i = 0; i < 7; i++) reminder.days[i] = true;
+            reminder.days = Reminder.ALL_DAYS;
             isNew = true;
         }
 
@@ -55,7 +64,15 @@ public class EditReminderActivity extends Activity {
         updateTimeDisplay();
 
         for (int i = 0; i < 7; i++) {
-            dayChecks[i].setChecked(reminder.days[i]);
+            dayChecks[i].setChecked(reminder.hasDay(i));
+        }
+
+        ArrayAdapter<String> tolerances = new ArrayAdapter<>(this,
+                android.R.layout.simple_spinner_item, TOLERANCE_LABELS);
+        tolerances.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        toleranceSpinner.setAdapter(tolerances);
+        for (int i = 0; i < Reminder.TOLERANCES.length; i++) {
+            if (Reminder.TOLERANCES[i] == reminder.tolerance) toleranceSpinner.setSelection(i);
         }
 
         timeDisplay.setOnClickListener(v -> {
@@ -70,6 +87,12 @@ public class EditReminderActivity extends Activity {
         findViewById(R.id.btn_cancel).setOnClickListener(v -> finish());
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+        store.flushAsync();
+    }
+
     private void updateTimeDisplay() {
         timeDisplay.setText(reminder.getTimeText());
     }
@@ -81,21 +104,29 @@ public class EditReminderActivity extends Activity {
             return;
         }
 
-        boolean anyDay = false;
         for (int i = 0; i < 7; i++) {
-            reminder.days[i] = dayChecks[i].isChecked();
-            if (reminder.days[i]) anyDay = true;
+            reminder.setDay(i, dayChecks[i].isChecked());
         }
 
-        if (!anyDay) {
+        if (reminder.days == 0) {
             Toast.makeText(this, "Select at least one day", Toast.LENGTH_SHORT).show();
             return;
         }
 
         reminder.name = name;
+        reminder.tolerance = Reminder.TOLERANCES[toleranceSpinner.getSelectedItemPosition()];
         reminder.enabled = true;
-        store.save(reminder);
-        AlarmScheduler.schedule(this, reminder);
+        Context app = getApplicationContext();
+        Reminder saved = reminder.copy();
+        boolean created = isNew;
+        // Saved on the pipeline, so the UI thread never waits for the list to
+        // load; the flush onStop() queues there runs after it
+        Pipeline.execute(() -> {
+            ReminderStore background = new ReminderStore(app);
+            if (created) saved.id = background.nextId();
+            background.save(saved);
+            AlarmScheduler.schedule(app, saved);
+        });
 
         Toast.makeText(this, isNew ? "Reminder created" : "Reminder updated", Toast.LENGTH_SHORT).show();
         finish();
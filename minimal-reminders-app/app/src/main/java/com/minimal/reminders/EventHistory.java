@@ -0,0 +1,64 @@
+package com.minimal.reminders;
+
+import android.content.Context;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+// The app's EventLog: every fire from AlarmReceiver and every dismiss and
+// snooze from NotificationActionReceiver, in files/events.*. Call from the
+// pipeline thread; each record() writes through.
+public final class EventHistory {
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+    private static final int DUMP_DAYS = 30;
+    private static final int DUMP_LINES = 10;
+
+    private static EventLog log;
+
+    private EventHistory() {
+    }
+
+    public static void record(Context ctx, List<Reminder> reminders, int type) {
+        EventLog events = get(ctx);
+        long now = System.currentTimeMillis();
+        for (Reminder r : reminders) events.record(now, r.id, type);
+        events.flush();
+    }
+
+    public static void record(Context ctx, int[] ids, int type) {
+        EventLog events = get(ctx);
+        long now = System.currentTimeMillis();
+        for (int id : ids) events.record(now, id, type);
+        events.flush();
+    }
+
+    // The most snoozed reminders of the last 30 days, from the daily counts
+    public static String dump(Context ctx) {
+        EventLog events = get(ctx);
+        long now = System.currentTimeMillis();
+        IntMap<EventLog.Totals> totals = events.totals(now - (DUMP_DAYS - 1) * DAY_MS, now);
+        Integer[] order = new Integer[totals.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Integer.compare(totals.valueAt(b).snoozes, totals.valueAt(a).snoozes));
+
+        ReminderStore store = new ReminderStore(ctx);
+        StringBuilder sb = new StringBuilder();
+        long[] sizes = events.getSizes();
+        sb.append("Last ").append(DUMP_DAYS).append(" days, ").append(totals.size()).append(" reminders; ")
+                .append(sizes[0]).append(" B log, ").append(sizes[1]).append(" B daily counts\n");
+        for (int i = 0; i < Math.min(order.length, DUMP_LINES); i++) {
+            EventLog.Totals t = totals.valueAt(order[i]);
+            Reminder r = store.findById(totals.keyAt(order[i]));
+            sb.append(String.format(Locale.ROOT, "%s: %d fired, %d snoozed (%.0f%%), %d dismissed, answered after %d s\n",
+                    r != null ? r.name : "#" + totals.keyAt(order[i]), t.fires, t.snoozes, t.snoozeRate() * 100,
+                    t.dismisses, t.meanWaitSeconds()));
+        }
+        return sb.toString();
+    }
+
+    private static synchronized EventLog get(Context ctx) {
+        if (log == null) log = new EventLog(ctx.getApplicationContext().getFilesDir());
+        return log;
+    }
+}
@@ -0,0 +1,81 @@
+package com.minimal.reminders;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+// How late alarms arrive and how long AlarmReceiver takes with them, per
+// reminder and overall. record() is lock-free and callable from any thread;
+// flush() folds new samples into the histograms and saves them to
+// files/latency.bin (a few hundred bytes for a typical list).
+public final class FireStats {
+    private static final String FILE = "latency.bin";
+
+    private static final LatencyRecorder recorder = new LatencyRecorder();
+    private static boolean loaded;
+
+    private FireStats() {
+    }
+
+    public static void record(int reminderId, long lagMs, long handlerMicros) {
+        recorder.record(reminderId, lagMs, handlerMicros);
+    }
+
+    public static synchronized void flush(Context ctx) {
+        ensureLoaded(ctx);
+        if (recorder.drain() > 0) save(ctx);
+    }
+
+    public static synchronized String dump(Context ctx) {
+        flush(ctx);
+        List<Reminder> all = new ReminderStore(ctx).loadAll();
+        IntMap<String> names = new IntMap<>(all.size());
+        for (Reminder r : all) names.put(r.id, r.name);
+        return recorder.dump(names);
+    }
+
+    public static synchronized void clear(Context ctx) {
+        ensureLoaded(ctx);
+        recorder.clear();
+        save(ctx);
+    }
+
+    private static void ensureLoaded(Context ctx) {
+        if (loaded) return;
+        loaded = true;
+        File file = file(ctx);
+        if (!file.exists()) return;
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int n = 0;
+            while (n < data.length) {
+                int r = in.read(data, n, data.length - n);
+                if (r < 0) break;
+                n += r;
+            }
+            recorder.load(data);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void save(Context ctx) {
+        File file = file(ctx);
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(recorder.encode());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (!tmp.renameTo(file)) tmp.delete();
+    }
+
+    private static File file(Context ctx) {
+        return new File(ctx.getApplicationContext().getFilesDir(), FILE);
+    }
+}
@@ -3,25 +3,51 @@ package com.minimal.reminders;
 import android.Manifest;
 import android.app.Activity;
 import android.app.AlertDialog;
+import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.BaseAdapter;
 import android.widget.CompoundButton;
+import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.ListView;
 import android.widget.Switch;
 import android.widget.TextView;
 
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 
 public class MainActivity extends Activity {
+    private static final long AGENDA_SPAN_MS = 24 * 60 * 60 * 1000L;
+    private static final int AGENDA_LINES = 5;
+
     private ReminderStore store;
-    private List<Reminder> reminders;
+    // Null until the first load
+    private ReminderColumns reminders;
+    // Search bar text, and the rows of "reminders" matching it (null: all)
+    private String query = "";
+    private int[] rows;
+    // Display text of each row of "reminders", made on its first bind and
+    // dropped when the columns are swapped
+    private String[] rowNames;
+    private String[] rowTimes;
+    private String[] rowDays;
     private ReminderAdapter adapter;
+    private ListView listView;
+    private TextView emptyView;
+    private TextView agendaView;
+    // Bumped on every refresh so a slow load never overwrites a newer one
+    private int loadGeneration;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -30,11 +56,31 @@ public class MainActivity extends Activity {
 
         store = new ReminderStore(this);
 
-        ListView listView = findViewById(R.id.list);
-        View emptyView = findViewById(R.id.empty);
-        listView.setEmptyView(emptyView);
+        listView = findViewById(R.id.list);
+        emptyView = findViewById(R.id.empty);
+        // The empty view is attached after the first load, so "No reminders"
+        // does not flash while the list is still loading.
+        emptyView.setVisibility(View.GONE);
+        agendaView = findViewById(R.id.agenda);
+
+        // Every keystroke refreshes; the search itself runs on the pipeline
+        EditText search = findViewById(R.id.search);
+        search.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                query = s.toString();
+                refreshList();
+            }
+        });
 
-        reminders = store.loadAll();
         adapter = new ReminderAdapter();
         listView.setAdapter(adapter);
 
@@ -43,7 +89,15 @@ public class MainActivity extends Activity {
             startActivity(intent);
         });
 
+        findViewById(R.id.title).setOnLongClickListener(v -> {
+            startActivity(new Intent(this, DiagnosticsActivity.class));
+            return true;
+        });
+
         requestNotificationPermission();
+
+        Context app = getApplicationContext();
+        Pipeline.execute(() -> AlarmScheduler.resumeBoot(app));
     }
 
     @Override
@@ -52,9 +106,113 @@ public class MainActivity extends Activity {
         refreshList();
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+        store.flushAsync();
+    }
+
+    // Loads off the UI thread, then applies only what changed: a structural
+    // change (rows added or removed) rebinds the list, a content change
+    // rebinds just the affected visible rows.
     private void refreshList() {
-        reminders = store.loadAll();
-        adapter.notifyDataSetChanged();
+        int generation = ++loadGeneration;
+        ReminderColumns old = reminders;
+        String text = query;
+        Pipeline.execute(() -> {
+            ReminderColumns loaded = store.columns();
+            Diff diff = Diff.compute(old, loaded);
+            String agenda = agendaText();
+            int[] matched = filter(loaded, text);
+            runOnUiThread(() -> apply(generation, loaded, diff, agenda, matched));
+        });
+    }
+
+    // Rows of "all" matching the search bar text, or null if it is empty.
+    // Names are looked up in the trigram index, not scanned.
+    private int[] filter(ReminderColumns all, String text) {
+        NameIndex.Query q = NameIndex.Query.parse(text);
+        if (q.isEmpty()) return null;
+        int[] ids = store.getNameIndex().search(q);
+        int[] matched = new int[ids.length];
+        int n = 0;
+        for (int id : ids) {
+            // The index may already hold a change "all" predates
+            int row = all.indexOf(id);
+            if (row >= 0) matched[n++] = row;
+        }
+        return Arrays.copyOf(matched, n);
+    }
+
+    // What fires in the next 24 hours, straight from the agenda index
+    private String agendaText() {
+        long now = System.currentTimeMillis();
+        long[] upcoming = store.getAgenda().range(now, now + AGENDA_SPAN_MS);
+        if (upcoming.length == 0) return "";
+        SimpleDateFormat format = new SimpleDateFormat("EEE HH:mm", Locale.getDefault());
+        StringBuilder sb = new StringBuilder("Next 24 hours");
+        for (int i = 0; i < upcoming.length && i < AGENDA_LINES; i++) {
+            Reminder r = store.findById(Agenda.idOf(upcoming[i]));
+            sb.append('\n').append(format.format(new Date(Agenda.timeOf(upcoming[i]))))
+                    .append("  ").append(r != null ? r.name : "");
+        }
+        if (upcoming.length > AGENDA_LINES) {
+            sb.append("\n+").append(upcoming.length - AGENDA_LINES).append(" more");
+        }
+        return sb.toString();
+    }
+
+    private void apply(int generation, ReminderColumns loaded, Diff diff, String agenda, int[] matched) {
+        if (generation != loadGeneration || isDestroyed()) return;
+        agendaView.setText(agenda);
+        agendaView.setVisibility(agenda.isEmpty() ? View.GONE : View.VISIBLE);
+        boolean first = listView.getEmptyView() == null;
+        boolean filtered = rows != null || matched != null;
+        if (loaded != reminders) {
+            rowNames = new String[loaded.size()];
+            rowTimes = new String[loaded.size()];
+            rowDays = new String[loaded.size()];
+        }
+        reminders = loaded;
+        rows = matched;
+        emptyView.setText(matched != null ? "No matching reminders." : "No reminders yet.\nTap + to add one.");
+        if (first) listView.setEmptyView(emptyView);
+
+        // Positions are not rows while a filter is or was in effect
+        if (diff.structural || filtered) {
+            adapter.notifyDataSetChanged();
+            return;
+        }
+        int firstVisible = listView.getFirstVisiblePosition();
+        for (int pos : diff.changed) {
+            View row = listView.getChildAt(pos - firstVisible);
+            if (row != null) adapter.getView(pos, row, listView);
+        }
+    }
+
+    static final class Diff {
+        boolean structural;
+        final List<Integer> changed = new ArrayList<>();
+
+        // Both are ordered by id. Rows are compared in place, without
+        // making Reminder objects.
+        static Diff compute(ReminderColumns old, ReminderColumns now) {
+            Diff diff = new Diff();
+            // Unchanged since the last load
+            if (old == now) return diff;
+            if (old == null || old.size() != now.size()) {
+                diff.structural = true;
+                return diff;
+            }
+            for (int i = 0; i < now.size(); i++) {
+                if (old.id(i) != now.id(i)) {
+                    diff.structural = true;
+                    return diff;
+                }
+                if (!old.sameRow(i, now, i)) diff.changed.add(i);
+            }
+            return diff;
+        }
     }
 
     private void requestNotificationPermission() {
@@ -68,63 +226,116 @@ public class MainActivity extends Activity {
 
     private class ReminderAdapter extends BaseAdapter {
         @Override
-        public int getCount() { return reminders.size(); }
+        public int getCount() {
+            if (rows != null) return rows.length;
+            return reminders != null ? reminders.size() : 0;
+        }
 
         @Override
-        public Object getItem(int pos) { return reminders.get(pos); }
+        public Object getItem(int pos) { return reminders.get(row(pos)); }
 
         @Override
-        public long getItemId(int pos) { return reminders.get(pos).id; }
+        public long getItemId(int pos) { return reminders.id(row(pos)); }
+
+        private int row(int pos) {
+            return rows != null ? rows[pos] : pos;
+        }
 
         @Override
         public View getView(int pos, View convertView, ViewGroup parent) {
+            RowHolder holder;
             if (convertView == null) {
                 convertView = getLayoutInflater().inflate(R.layout.item_reminder, parent, false);
+                holder = new RowHolder(convertView);
+                convertView.setTag(holder);
+            } else {
+                holder = (RowHolder) convertView.getTag();
             }
-            Reminder r = reminders.get(pos);
-            TextView nameView = convertView.findViewById(R.id.item_name);
-            TextView timeView = convertView.findViewById(R.id.item_time);
-            TextView daysView = convertView.findViewById(R.id.item_days);
-            Switch toggle = convertView.findViewById(R.id.item_toggle);
-            ImageButton editBtn = convertView.findViewById(R.id.btn_edit);
-            ImageButton deleteBtn = convertView.findViewById(R.id.btn_delete);
-
-            nameView.setText(r.name);
-            timeView.setText(r.getTimeText());
-            daysView.setText(r.getDaysText());
-
-            toggle.setOnCheckedChangeListener(null);
-            toggle.setChecked(r.enabled);
+            holder.bind(row(pos));
+            return convertView;
+        }
+    }
+
+    // Views and listeners are set up once per row view; binding only swaps
+    // the reminder id the listeners act on. Nothing is read into a Reminder
+    // until a listener needs one.
+    private class RowHolder {
+        final TextView nameView;
+        final TextView timeView;
+        final TextView daysView;
+        final Switch toggle;
+        // The bound reminder (ids start at 1, so 0 while binding) and whether
+        // it is shown enabled
+        int id;
+        boolean enabled;
+
+        RowHolder(View row) {
+            nameView = row.findViewById(R.id.item_name);
+            timeView = row.findViewById(R.id.item_time);
+            daysView = row.findViewById(R.id.item_days);
+            toggle = row.findViewById(R.id.item_toggle);
+            ImageButton editBtn = row.findViewById(R.id.btn_edit);
+            ImageButton deleteBtn = row.findViewById(R.id.btn_delete);
+
             toggle.setOnCheckedChangeListener((CompoundButton buttonView, boolean isChecked) -> {
-                r.enabled = isChecked;
-                store.save(r);
-                if (isChecked) {
-                    AlarmScheduler.schedule(MainActivity.this, r);
-                } else {
-                    AlarmScheduler.cancel(MainActivity.this, r);
-                }
+                if (id == 0 || enabled == isChecked) return;
+                enabled = isChecked;
+                int toggled = id;
+                Context app = getApplicationContext();
+                // Arming may build the alarm queue, so none of it runs here
+                Pipeline.execute(() -> {
+                    // Only the flag: the row may be older than the stored reminder
+                    Reminder r = store.update(toggled, x -> x.enabled = isChecked);
+                    if (r == null) return;
+                    if (isChecked) {
+                        AlarmScheduler.schedule(app, r);
+                    } else {
+                        AlarmScheduler.cancel(app, r);
+                    }
+                });
             });
 
             editBtn.setOnClickListener(v -> {
                 Intent intent = new Intent(MainActivity.this, EditReminderActivity.class);
-                intent.putExtra("reminder_id", r.id);
+                intent.putExtra("reminder_id", id);
                 startActivity(intent);
             });
 
             deleteBtn.setOnClickListener(v -> {
+                Reminder r = store.findById(id);
+                if (r == null) return;
                 new AlertDialog.Builder(MainActivity.this)
                         .setTitle("Delete reminder?")
                         .setMessage("Delete \"" + r.name + "\"?")
                         .setPositiveButton("Delete", (d, w) -> {
-                            AlarmScheduler.cancel(MainActivity.this, r);
-                            store.delete(r.id);
+                            Context app = getApplicationContext();
+                            Pipeline.execute(() -> {
+                                AlarmScheduler.cancel(app, r);
+                                store.delete(r.id);
+                            });
+                            // Queued behind the delete
                             refreshList();
                         })
                         .setNegativeButton("Cancel", null)
                         .show();
             });
+        }
 
-            return convertView;
+        void bind(int row) {
+            ReminderColumns c = reminders;
+            if (rowNames[row] == null) {
+                rowNames[row] = c.name(row);
+                rowTimes[row] = Reminder.formatTime(c.hour(row), c.minute(row));
+                rowDays[row] = Reminder.formatDays(c.days(row));
+            }
+            // Cleared first so setChecked below does not fire for the old reminder
+            id = 0;
+            nameView.setText(rowNames[row]);
+            timeView.setText(rowTimes[row]);
+            daysView.setText(rowDays[row]);
+            enabled = c.enabled(row);
+            toggle.setChecked(enabled);
+            id = c.id(row);
         }
     }
 }
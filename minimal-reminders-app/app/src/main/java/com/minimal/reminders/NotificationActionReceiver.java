@@ -5,6 +5,9 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class NotificationActionReceiver extends BroadcastReceiver {
     @Override
     public void onReceive(Context ctx, Intent intent) {
@@ -17,12 +20,49 @@ public class NotificationActionReceiver extends BroadcastReceiver {
             nm.cancel(notifId);
         }
 
-        if ("SNOOZE".equals(action)) {
+        // Snoozes go to the snooze queue and every action to the event
+        // history, both file writes; keep them off the main thread
+        if ("DISMISS".equals(action)) {
+            if (notifId != -1) {
+                Context app = ctx.getApplicationContext();
+                Pipeline.execute(goAsync(), task ->
+                        EventHistory.record(app, new int[]{notifId}, EventLog.DISMISS));
+            }
+        } else if ("SNOOZE".equals(action)) {
             int reminderId = intent.getIntExtra("reminder_id", -1);
             String name = intent.getStringExtra("reminder_name");
             if (reminderId != -1) {
-                AlarmScheduler.scheduleSnooze(ctx, reminderId, name);
+                Context app = ctx.getApplicationContext();
+                Pipeline.execute(goAsync(), task -> {
+                    AlarmScheduler.scheduleSnooze(app, reminderId, name);
+                    EventHistory.record(app, new int[]{reminderId}, EventLog.SNOOZE);
+                });
+            }
+        } else if ("SNOOZE_ALL".equals(action)) {
+            int[] ids = intent.getIntArrayExtra("reminder_ids");
+            if (ids != null) {
+                if (nm != null) {
+                    for (int id : ids) nm.cancel(id);
+                }
+                Context app = ctx.getApplicationContext();
+                Pipeline.execute(goAsync(), task -> {
+                    ReminderStore store = new ReminderStore(app);
+                    List<Reminder> snoozed = new ArrayList<>(ids.length);
+                    for (int id : ids) {
+                        Reminder r = store.findById(id);
+                        Reminder entry = new Reminder();
+                        entry.id = id;
+                        entry.name = r != null ? r.name : null;
+                        snoozed.add(entry);
+                    }
+                    AlarmScheduler.scheduleSnooze(app, snoozed, AlarmScheduler.getSnoozeMs(app));
+                    EventHistory.record(app, ids, EventLog.SNOOZE);
+                });
             }
         }
+
+        if (nm != null) {
+            Notifier.cancelEmptySummaries(nm);
+        }
     }
 }
@@ -0,0 +1,334 @@
+package com.minimal.reminders;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.media.AudioAttributes;
+import android.media.RingtoneManager;
+import android.net.Uri;
+import android.service.notification.StatusBarNotification;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Posts reminder notifications. Fires that arrive within the burst window of
+// each other are collected and posted together: a single reminder is posted
+// as before, several become one group whose summary is the only notification
+// that plays a sound. Receivers hand over their PendingResult so the process
+// stays alive until the burst is flushed.
+//
+// The channel is checked once per process, and each reminder's
+// notification is kept as a template with its PendingIntents, so posting
+// one is a single notify() call. The system calls made are counted.
+public final class Notifier {
+    public static final String CHANNEL_ID = "reminders_v2";
+    private static final String OLD_CHANNEL_ID = "reminders";
+    private static final Uri SOUND = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
+
+    private static final String PREFS = "notifications";
+    private static final String KEY_BURST_WINDOW = "burst_window_ms";
+    // Number of the last burst group posted
+    private static final String KEY_LAST_GROUP = "last_group";
+    private static final long DEFAULT_BURST_WINDOW_MS = 2000;
+    // Stays well inside the time a receiver may hold goAsync()
+    private static final long MAX_BURST_WINDOW_MS = 8000;
+
+    private static final Object lock = new Object();
+    private static final List<Integer> pendingIds = new ArrayList<>();
+    private static final List<String> pendingNames = new ArrayList<>();
+    private static final List<BroadcastReceiver.PendingResult> pendingResults = new ArrayList<>();
+    private static boolean flushScheduled;
+    private static volatile boolean channelReady;
+
+    private static final AtomicLong binderCalls = new AtomicLong();
+    private static final AtomicLong notifications = new AtomicLong();
+
+    // Touched only on the pipeline thread
+    private static final IntMap<Template> templates = new IntMap<>();
+    private static PendingIntent openPi;
+    private static int lastGroup = -1;
+
+    private Notifier() {
+    }
+
+    public static long getBurstWindow(Context ctx) {
+        return prefs(ctx).getLong(KEY_BURST_WINDOW, DEFAULT_BURST_WINDOW_MS);
+    }
+
+    public static void setBurstWindow(Context ctx, long ms) {
+        ms = Math.max(0, Math.min(ms, MAX_BURST_WINDOW_MS));
+        prefs(ctx).edit().putLong(KEY_BURST_WINDOW, ms).apply();
+    }
+
+    // Queues notifications for the current burst. "result" (may be null) is
+    // finished once they have been posted.
+    public static void enqueue(Context ctx, List<Reminder> reminders,
+                               BroadcastReceiver.PendingResult result) {
+        long window = getBurstWindow(ctx);
+        boolean flushNow = false;
+        synchronized (lock) {
+            for (Reminder r : reminders) {
+                pendingIds.add(r.id);
+                pendingNames.add(r.name != null ? r.name : "Reminder");
+            }
+            if (result != null) pendingResults.add(result);
+            if (window <= 0) {
+                flushNow = true;
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                Pipeline.schedule(() -> flush(ctx), window);
+            }
+        }
+        if (flushNow) flush(ctx);
+    }
+
+    private static void flush(Context ctx) {
+        int[] ids;
+        String[] names;
+        List<BroadcastReceiver.PendingResult> results;
+        synchronized (lock) {
+            ids = new int[pendingIds.size()];
+            names = new String[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = pendingIds.get(i);
+                names[i] = pendingNames.get(i);
+            }
+            results = new ArrayList<>(pendingResults);
+            pendingIds.clear();
+            pendingNames.clear();
+            pendingResults.clear();
+            flushScheduled = false;
+        }
+
+        try {
+            NotificationManager nm = (NotificationManager) ctx.getSystemService(Context.NOTIFICATION_SERVICE);
+            if (nm == null) return;
+            notifications.addAndGet(ids.length);
+            if (ids.length == 1) {
+                post(nm, ids[0], build(ctx, ids[0], names[0], null));
+            } else if (ids.length > 1) {
+                postGroup(ctx, nm, ids, names);
+            }
+        } finally {
+            for (BroadcastReceiver.PendingResult r : results) r.finish();
+        }
+    }
+
+    private static void postGroup(Context ctx, NotificationManager nm, int[] ids, String[] names) {
+        // Reminder ids are positive; each burst gets its own negative summary
+        // id from a counter kept across processes, however close bursts are
+        if (lastGroup < 0) lastGroup = prefs(ctx).getInt(KEY_LAST_GROUP, 0);
+        lastGroup = (lastGroup + 1) % 1000000000;
+        prefs(ctx).edit().putInt(KEY_LAST_GROUP, lastGroup).apply();
+        int summaryId = -2 - lastGroup;
+        String group = "burst_" + summaryId;
+
+        for (int i = 0; i < ids.length; i++) {
+            post(nm, ids[i], build(ctx, ids[i], names[i], group));
+        }
+
+        Notification.InboxStyle style = new Notification.InboxStyle();
+        for (String name : names) style.addLine(name);
+        String title = ids.length + " reminders";
+        style.setBigContentTitle(title);
+
+        Intent snoozeAllIntent = new Intent(ctx, NotificationActionReceiver.class);
+        snoozeAllIntent.setAction("SNOOZE_ALL");
+        snoozeAllIntent.putExtra("notification_id", summaryId);
+        snoozeAllIntent.putExtra("reminder_ids", ids);
+        PendingIntent snoozeAllPi = getBroadcast(ctx, summaryId, snoozeAllIntent);
+
+        Notification summary = new Notification.Builder(ctx, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.ic_lock_idle_alarm)
+                .setContentTitle(title)
+                .setContentText(joinNames(names))
+                .setStyle(style)
+                .setNumber(ids.length)
+                .setContentIntent(openApp(ctx))
+                .setAutoCancel(true)
+                .setGroup(group)
+                .setGroupSummary(true)
+                .setGroupAlertBehavior(Notification.GROUP_ALERT_SUMMARY)
+                .setSound(SOUND)
+                .addAction(android.R.drawable.ic_popup_reminder,
+                        "Snooze all (" + snoozeLabel(ctx) + ")", snoozeAllPi)
+                .setPriority(Notification.PRIORITY_HIGH)
+                .setDefaults(Notification.DEFAULT_VIBRATE)
+                .build();
+        post(nm, summaryId, summary);
+    }
+
+    // The notification for one reminder, from its template. A template holds
+    // the built notification with its action PendingIntents and is rebuilt
+    // only when the name or the snooze label changes, so posting it again
+    // makes no PendingIntent calls. Runs on the pipeline thread.
+    private static Notification build(Context ctx, int id, String name, String group) {
+        Template t = templates.get(id);
+        String label = snoozeLabel(ctx);
+        if (t == null || !t.name.equals(name) || !t.snoozeLabel.equals(label)) {
+            t = new Template(name, label, newBuilder(ctx, id, name, label).build());
+            templates.put(id, t);
+        }
+        Notification n = t.notification.clone();
+        n.when = System.currentTimeMillis();
+        if (group == null) return n;
+        return Notification.Builder.recoverBuilder(ctx, n)
+                .setGroup(group)
+                .setGroupAlertBehavior(Notification.GROUP_ALERT_SUMMARY)
+                .build();
+    }
+
+    private static Notification.Builder newBuilder(Context ctx, int id, String name, String label) {
+        // Dismiss action
+        Intent dismissIntent = new Intent(ctx, NotificationActionReceiver.class);
+        dismissIntent.setAction("DISMISS");
+        dismissIntent.putExtra("notification_id", id);
+        PendingIntent dismissPi = getBroadcast(ctx, id * 100 + 1, dismissIntent);
+
+        // Snooze action
+        Intent snoozeIntent = new Intent(ctx, NotificationActionReceiver.class);
+        snoozeIntent.setAction("SNOOZE");
+        snoozeIntent.putExtra("notification_id", id);
+        snoozeIntent.putExtra("reminder_id", id);
+        snoozeIntent.putExtra("reminder_name", name);
+        PendingIntent snoozePi = getBroadcast(ctx, id * 100 + 2, snoozeIntent);
+
+        // Auto-snooze when notification is swiped away
+        Intent swipeSnoozeIntent = new Intent(ctx, NotificationActionReceiver.class);
+        swipeSnoozeIntent.setAction("SNOOZE");
+        swipeSnoozeIntent.putExtra("notification_id", id);
+        swipeSnoozeIntent.putExtra("reminder_id", id);
+        swipeSnoozeIntent.putExtra("reminder_name", name);
+        PendingIntent swipeSnoozePi = getBroadcast(ctx, id * 100 + 4, swipeSnoozeIntent);
+
+        return new Notification.Builder(ctx, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.ic_lock_idle_alarm)
+                .setContentTitle(name)
+                .setContentText("Reminder triggered")
+                .setContentIntent(openApp(ctx))
+                .setDeleteIntent(swipeSnoozePi)
+                .setAutoCancel(true)
+                .setSound(SOUND)
+                .addAction(android.R.drawable.ic_menu_close_clear_cancel, "Dismiss", dismissPi)
+                .addAction(android.R.drawable.ic_popup_reminder, "Snooze (" + label + ")", snoozePi)
+                .setPriority(Notification.PRIORITY_HIGH)
+                .setDefaults(Notification.DEFAULT_VIBRATE);
+    }
+
+    // Every notification opens the main screen through the same PendingIntent
+    private static PendingIntent openApp(Context ctx) {
+        if (openPi == null) {
+            binderCalls.incrementAndGet();
+            openPi = PendingIntent.getActivity(ctx, 0, new Intent(ctx, MainActivity.class),
+                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        }
+        return openPi;
+    }
+
+    private static PendingIntent getBroadcast(Context ctx, int requestCode, Intent intent) {
+        binderCalls.incrementAndGet();
+        return PendingIntent.getBroadcast(ctx, requestCode, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    private static void post(NotificationManager nm, int id, Notification n) {
+        binderCalls.incrementAndGet();
+        nm.notify(id, n);
+    }
+
+    // Creates the channel, and deletes the one it replaced, unless the
+    // system already has it. Asked once per process: a marker saved in prefs
+    // would come back with Auto Backup on a new device that has no channel.
+    public static void ensureChannel(Context ctx) {
+        if (channelReady) return;
+        synchronized (lock) {
+            if (channelReady) return;
+            NotificationManager nm = (NotificationManager) ctx.getSystemService(Context.NOTIFICATION_SERVICE);
+            if (nm == null) return;
+            binderCalls.incrementAndGet();
+            if (nm.getNotificationChannel(CHANNEL_ID) == null) {
+                // Delete old channel that used alarm ringtone (looping sound)
+                binderCalls.incrementAndGet();
+                nm.deleteNotificationChannel(OLD_CHANNEL_ID);
+
+                AudioAttributes audioAttr = new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_NOTIFICATION)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                        .build();
+                NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "Reminders",
+                        NotificationManager.IMPORTANCE_HIGH);
+                channel.setDescription("Reminder notifications");
+                channel.setSound(SOUND, audioAttr);
+                channel.enableVibration(true);
+                binderCalls.incrementAndGet();
+                nm.createNotificationChannel(channel);
+            }
+            channelReady = true;
+        }
+    }
+
+    // System calls made per notification posted, channel setup included
+    public static String getBinderStats() {
+        long n = notifications.get();
+        long calls = binderCalls.get();
+        return String.format(Locale.ROOT, "%d calls for %d notifications, %.2f per notification",
+                calls, n, n > 0 ? (double) calls / n : 0);
+    }
+
+    // Removes the summary of every burst group whose last child is gone.
+    // Children do not carry their summary's id, so that their PendingIntents
+    // stay the same from one burst to the next.
+    public static void cancelEmptySummaries(NotificationManager nm) {
+        StatusBarNotification[] active = nm.getActiveNotifications();
+        List<String> live = new ArrayList<>();
+        for (StatusBarNotification sbn : active) {
+            Notification n = sbn.getNotification();
+            if ((n.flags & Notification.FLAG_GROUP_SUMMARY) == 0 && n.getGroup() != null) live.add(n.getGroup());
+        }
+        for (StatusBarNotification sbn : active) {
+            Notification n = sbn.getNotification();
+            if ((n.flags & Notification.FLAG_GROUP_SUMMARY) != 0 && n.getGroup() != null
+                    && n.getGroup().startsWith("burst_") && !live.contains(n.getGroup())) {
+                nm.cancel(sbn.getId());
+            }
+        }
+    }
+
+    // The configured snooze duration, e.g. "10 min" or "1 h"
+    private static String snoozeLabel(Context ctx) {
+        long minutes = AlarmScheduler.getSnoozeMs(ctx) / 60000;
+        return minutes % 60 == 0 ? minutes / 60 + " h" : minutes + " min";
+    }
+
+    private static String joinNames(String[] names) {
+        StringBuilder sb = new StringBuilder();
+        for (String name : names) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(name);
+        }
+        return sb.toString();
+    }
+
+    private static final class Template {
+        final String name;
+        final String snoozeLabel;
+        final Notification notification;
+
+        Template(String name, String snoozeLabel, Notification notification) {
+            this.name = name;
+            this.snoozeLabel = snoozeLabel;
+            this.notification = notification;
+        }
+    }
+
+    private static SharedPreferences prefs(Context ctx) {
+        return ctx.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+}
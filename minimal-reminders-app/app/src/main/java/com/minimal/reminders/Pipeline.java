@@ -0,0 +1,132 @@
+package com.minimal.reminders;
+
+import android.content.BroadcastReceiver;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Background pipeline for receiver work. Receivers hand off through goAsync()
+// so onReceive returns immediately; one worker thread runs the jobs in order.
+// The queue is unbounded, so a job never runs on the caller's thread, which
+// is usually the main thread. Jobs are small and come from receivers and
+// screens, so a backlog drains on its own.
+//
+// Each job reports how long it spent in each stage, so slow lookups or binder
+// calls show up in getStats().
+public final class Pipeline {
+    public static final int STAGE_QUEUE = 0;
+    public static final int STAGE_CHANNEL = 1;
+    public static final int STAGE_LOOKUP = 2;
+    public static final int STAGE_NOTIFY = 3;
+    public static final int STAGE_RESCHEDULE = 4;
+    public static final int STAGE_TOTAL = 5;
+    private static final String[] STAGE_NAMES =
+            {"queue", "channel", "lookup", "notify", "reschedule", "total"};
+
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            r -> {
+                Thread t = new Thread(r, "reminders-pipeline");
+                t.setPriority(Thread.NORM_PRIORITY - 1);
+                return t;
+            });
+
+    // Only used to delay work; the delayed task itself runs on the executor
+    private static final ScheduledThreadPoolExecutor delays = new ScheduledThreadPoolExecutor(1,
+            r -> new Thread(r, "reminders-timer"));
+
+    static {
+        executor.allowCoreThreadTimeOut(true);
+        delays.setKeepAliveTime(30, TimeUnit.SECONDS);
+        delays.allowCoreThreadTimeOut(true);
+    }
+
+    private static final AtomicLongArray counts = new AtomicLongArray(STAGE_NAMES.length);
+    private static final AtomicLongArray totalNanos = new AtomicLongArray(STAGE_NAMES.length);
+    private static final AtomicLongArray maxNanos = new AtomicLongArray(STAGE_NAMES.length);
+
+    public interface Job {
+        void run(Task task);
+    }
+
+    private Pipeline() {
+    }
+
+    public static void execute(BroadcastReceiver.PendingResult result, Job job) {
+        long queued = System.nanoTime();
+        executor.execute(() -> {
+            Task task = new Task(queued, result);
+            try {
+                task.mark(STAGE_QUEUE);
+                job.run(task);
+            } finally {
+                task.finish();
+            }
+        });
+    }
+
+    public static void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    public static void schedule(Runnable task, long delayMs) {
+        delays.schedule(() -> executor.execute(task), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    public static String getStats() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < STAGE_NAMES.length; i++) {
+            long n = counts.get(i);
+            if (n == 0) continue;
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(STAGE_NAMES[i]).append(": ").append(n).append(" runs, avg ")
+                    .append(totalNanos.get(i) / n / 1000).append(" us, max ")
+                    .append(maxNanos.get(i) / 1000).append(" us");
+        }
+        return sb.length() > 0 ? sb.toString() : "no receiver runs yet";
+    }
+
+    private static void record(int stage, long nanos) {
+        counts.incrementAndGet(stage);
+        totalNanos.addAndGet(stage, nanos);
+        long max;
+        do {
+            max = maxNanos.get(stage);
+        } while (nanos > max && !maxNanos.compareAndSet(stage, max, nanos));
+    }
+
+    // One job run. mark(stage) attributes the time since the previous mark to
+    // that stage. The receiver's PendingResult is finished when the job
+    // returns, unless the job takes it over with detach().
+    public static final class Task {
+        private final long start;
+        private long last;
+        private BroadcastReceiver.PendingResult result;
+
+        Task(long start, BroadcastReceiver.PendingResult result) {
+            this.start = start;
+            this.last = start;
+            this.result = result;
+        }
+
+        public void mark(int stage) {
+            long now = System.nanoTime();
+            record(stage, now - last);
+            last = now;
+        }
+
+        public BroadcastReceiver.PendingResult detach() {
+            BroadcastReceiver.PendingResult r = result;
+            result = null;
+            return r;
+        }
+
+        void finish() {
+            record(STAGE_TOTAL, System.nanoTime() - start);
+            if (result != null) result.finish();
+        }
+    }
+}
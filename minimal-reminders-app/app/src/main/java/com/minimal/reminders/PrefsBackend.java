@@ -0,0 +1,78 @@
+package com.minimal.reminders;
+
+import android.content.SharedPreferences;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+// The original storage: the whole list as one JSON array string in
+// SharedPreferences. Every write re-serializes everything.
+public class PrefsBackend implements StorageBackend {
+    private static final String KEY = "data";
+
+    private final SharedPreferences prefs;
+    private long bytesWritten;
+
+    public PrefsBackend(SharedPreferences prefs) {
+        this.prefs = prefs;
+    }
+
+    @Override
+    public boolean exists() {
+        return prefs.contains(KEY);
+    }
+
+    @Override
+    public void load(IntMap<Reminder> into) {
+        String json = prefs.getString(KEY, "[]");
+        try {
+            JSONArray arr = new JSONArray(json);
+            for (int i = 0; i < arr.length(); i++) {
+                Reminder r = ReminderJson.fromJson(arr.getJSONObject(i));
+                into.put(r.id, r);
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void upsert(Reminder r, IntMap<Reminder> all) {
+        replaceAll(all);
+    }
+
+    @Override
+    public void delete(int id, IntMap<Reminder> all) {
+        replaceAll(all);
+    }
+
+    @Override
+    public void replaceAll(IntMap<Reminder> all) {
+        JSONArray arr = new JSONArray();
+        try {
+            for (int i = 0; i < all.size(); i++) {
+                arr.put(ReminderJson.toJson(all.valueAt(i)));
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        String json = arr.toString();
+        prefs.edit().putString(KEY, json).apply();
+        bytesWritten += json.length();
+    }
+
+    @Override
+    public void sync(IntMap<Reminder> all) {
+        // Every write already went out whole
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void clear() {
+        prefs.edit().remove(KEY).apply();
+    }
+}
@@ -0,0 +1,72 @@
+package com.minimal.reminders;
+
+import android.content.SharedPreferences;
+
+// KeyValueStore on top of SharedPreferences
+public class PrefsKeyValueStore implements KeyValueStore {
+    private final SharedPreferences prefs;
+
+    public PrefsKeyValueStore(SharedPreferences prefs) {
+        this.prefs = prefs;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return prefs.contains(key);
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        return prefs.getInt(key, defValue);
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        return prefs.getLong(key, defValue);
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        return prefs.getBoolean(key, defValue);
+    }
+
+    @Override
+    public Editor edit() {
+        SharedPreferences.Editor editor = prefs.edit();
+        return new Editor() {
+            @Override
+            public Editor putInt(String key, int value) {
+                editor.putInt(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putLong(String key, long value) {
+                editor.putLong(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putBoolean(String key, boolean value) {
+                editor.putBoolean(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor remove(String key) {
+                editor.remove(key);
+                return this;
+            }
+
+            @Override
+            public void apply() {
+                editor.apply();
+            }
+
+            @Override
+            public boolean commit() {
+                return editor.commit();
+            }
+        };
+    }
+}
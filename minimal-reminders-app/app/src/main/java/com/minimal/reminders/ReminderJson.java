@@ -0,0 +1,46 @@
+package com.minimal.reminders;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+
+// The original JSON form of a Reminder, still read when migrating the old
+// SharedPreferences blob and version 1 journal files. Days are a "1010101"
+// string, Monday first.
+public final class ReminderJson {
+    private ReminderJson() {
+    }
+
+    public static JSONObject toJson(Reminder r) throws JSONException {
+        JSONObject obj = new JSONObject();
+        obj.put("id", r.id);
+        obj.put("name", r.name);
+        obj.put("hour", r.hour);
+        obj.put("minute", r.minute);
+        obj.put("enabled", r.enabled);
+        StringBuilder daysStr = new StringBuilder();
+        for (int i = 0; i < 7; i++) daysStr.append(r.hasDay(i) ? "1" : "0");
+        obj.put("days", daysStr.toString());
+        return obj;
+    }
+
+    public static Reminder fromJson(JSONObject obj) throws JSONException {
+        Reminder r = new Reminder();
+        r.id = obj.getInt("id");
+        r.name = obj.getString("name");
+        r.hour = obj.getInt("hour");
+        r.minute = obj.getInt("minute");
+        r.enabled = obj.optBoolean("enabled", true);
+        String daysStr = obj.getString("days");
+        for (int i = 0; i < 7 && i < daysStr.length(); i++) {
+            r.setDay(i, daysStr.charAt(i) == '1');
+        }
+        return r;
+    }
+
+    // JournalBackend.LegacyDecoder for version 1 journal records
+    public static Reminder decode(byte[] data, int offset, int length) throws JSONException {
+        return fromJson(new JSONObject(new String(data, offset, length, StandardCharsets.UTF_8)));
+    }
+}
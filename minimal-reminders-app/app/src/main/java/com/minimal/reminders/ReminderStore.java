@@ -3,84 +3,115 @@ package com.minimal.reminders;
 import android.content.Context;
 import android.content.SharedPreferences;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 
+// Android entry point to the reminder list. All instances share one
+// process-wide ReminderRepository, so the backing storage is read at most
+// once per process and receivers and activities see the same state. Writes
+// are committed on the pipeline after a quiet period; activities flush when
+// they go to the background. The Agenda of upcoming occurrences and the
+// NameIndex for search follow every change made through any instance.
+// A process that only looks up a reminder or two (a receiver woken for a
+// snooze) reads them from the mapped RecordSnapshot and never loads the list.
 public class ReminderStore {
     private static final String PREFS = "reminders";
-    private static final String KEY = "data";
-    private static final String KEY_NEXT_ID = "next_id";
 
-    private final SharedPreferences prefs;
+    private static final Object lock = new Object();
+    private static ReminderRepository repository;
+    private static Agenda agenda;
+    private static NameIndex nameIndex;
+
+    private final ReminderRepository repo;
 
     public ReminderStore(Context ctx) {
-        prefs = ctx.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        synchronized (lock) {
+            if (repository == null) {
+                Context app = ctx.getApplicationContext();
+                SharedPreferences prefs = app.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+                repository = new ReminderRepository(
+                        new JournalBackend(app.getFilesDir(), ReminderJson::decode,
+                                new RecordSnapshot(new File(app.getFilesDir(), "reminders.records"))),
+                        new PrefsBackend(prefs),
+                        new PrefsKeyValueStore(prefs),
+                        Pipeline::schedule);
+                agenda = new Agenda(repository);
+                nameIndex = new NameIndex(repository);
+            }
+            repo = repository;
+        }
     }
 
-    public List<Reminder> loadAll() {
-        List<Reminder> list = new ArrayList<>();
-        String json = prefs.getString(KEY, "[]");
-        try {
-            JSONArray arr = new JSONArray(json);
-            for (int i = 0; i < arr.length(); i++) {
-                list.add(Reminder.fromJson(arr.getJSONObject(i)));
-            }
-        } catch (JSONException e) {
-            e.printStackTrace();
+    public ReminderRepository getRepository() {
+        return repo;
+    }
+
+    public Agenda getAgenda() {
+        synchronized (lock) {
+            return agenda;
         }
-        return list;
     }
 
-    public void saveAll(List<Reminder> list) {
-        JSONArray arr = new JSONArray();
-        try {
-            for (Reminder r : list) {
-                arr.put(r.toJson());
-            }
-        } catch (JSONException e) {
-            e.printStackTrace();
+    public NameIndex getNameIndex() {
+        synchronized (lock) {
+            return nameIndex;
         }
-        prefs.edit().putString(KEY, arr.toString()).apply();
+    }
+
+    public List<Reminder> loadAll() {
+        return repo.loadAll();
+    }
+
+    // The list without copying it out; the same instance until the next change
+    public ReminderColumns columns() {
+        return repo.columns();
+    }
+
+    public void saveAll(List<Reminder> list) {
+        repo.saveAll(list);
     }
 
     public int nextId() {
-        int id = prefs.getInt(KEY_NEXT_ID, 1);
-        prefs.edit().putInt(KEY_NEXT_ID, id + 1).apply();
-        return id;
+        return repo.nextId();
     }
 
     public Reminder findById(int id) {
-        for (Reminder r : loadAll()) {
-            if (r.id == id) return r;
-        }
-        return null;
+        return repo.findById(id);
     }
 
     public void save(Reminder reminder) {
-        List<Reminder> all = loadAll();
-        boolean found = false;
-        for (int i = 0; i < all.size(); i++) {
-            if (all.get(i).id == reminder.id) {
-                all.set(i, reminder);
-                found = true;
-                break;
-            }
-        }
-        if (!found) all.add(reminder);
-        saveAll(all);
+        repo.save(reminder);
+    }
+
+    public Reminder update(int id, ReminderRepository.Edit edit) {
+        return repo.update(id, edit);
     }
 
     public void delete(int id) {
-        List<Reminder> all = loadAll();
-        for (int i = 0; i < all.size(); i++) {
-            if (all.get(i).id == id) {
-                all.remove(i);
-                break;
-            }
+        repo.delete(id);
+    }
+
+    // Streams reminders in and adds them under new ids in one commit. Alarms
+    // are up to the caller (one AlarmScheduler.rescheduleAll for the batch).
+    public int importFrom(InputStream in, ReminderTransfer.Progress progress) throws IOException {
+        return repo.addAll(ReminderTransfer.read(in, progress));
+    }
+
+    public int exportTo(OutputStream out, ReminderTransfer.Progress progress) throws IOException {
+        return ReminderTransfer.write(repo, out, progress);
+    }
+
+    // Commits pending writes on the pipeline
+    public void flushAsync() {
+        Pipeline.execute(repo::flush);
+    }
+
+    public static ReminderRepository.Stats getStats() {
+        synchronized (lock) {
+            return repository != null ? repository.getStats() : new ReminderRepository.Stats(0, 0, 0, 0, 0, 0, 0, 0);
         }
-        saveAll(all);
     }
 }
@@ -0,0 +1,43 @@
+package com.minimal.reminders;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Shared fixtures for the benchmarks. Seeded, so every run sees the same data.
+final class BenchData {
+    private BenchData() {
+    }
+
+    static List<Reminder> reminders(int n) {
+        Random rnd = new Random(42);
+        List<Reminder> list = new ArrayList<>(n);
+        for (int i = 1; i <= n; i++) {
+            Reminder r = new Reminder();
+            r.id = i;
+            r.name = "Reminder " + i;
+            r.hour = rnd.nextInt(24);
+            r.minute = rnd.nextInt(60);
+            r.days = (byte) (1 + rnd.nextInt(Reminder.ALL_DAYS));
+            r.enabled = rnd.nextInt(10) != 0;
+            list.add(r);
+        }
+        return list;
+    }
+
+    static File tempDir() {
+        File dir = new File(System.getProperty("java.io.tmpdir"),
+                "reminders-bench-" + System.nanoTime());
+        if (!dir.mkdirs()) throw new IllegalStateException("Cannot create " + dir);
+        return dir;
+    }
+
+    static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        dir.delete();
+    }
+}
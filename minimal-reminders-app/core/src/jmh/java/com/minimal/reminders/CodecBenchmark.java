@@ -0,0 +1,41 @@
+package com.minimal.reminders;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// One reminder through ReminderCodec, the per-record cost of every journal
+// append and snapshot read.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CodecBenchmark {
+    private Reminder reminder;
+    private ReminderCodec.Buffer buf;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        reminder = BenchData.reminders(1).get(0);
+        buf = new ReminderCodec.Buffer(64);
+        encoded = ReminderCodec.encode(reminder);
+    }
+
+    @Benchmark
+    public int encode() {
+        buf.reset();
+        ReminderCodec.encode(reminder, buf);
+        return buf.size();
+    }
+
+    @Benchmark
+    public Reminder decode() {
+        return ReminderCodec.decode(new ReminderCodec.Cursor(encoded, 0));
+    }
+}
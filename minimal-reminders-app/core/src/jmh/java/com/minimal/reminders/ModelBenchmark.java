@@ -0,0 +1,87 @@
+package com.minimal.reminders;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// One pass over the whole list, as building the alarm queue or refreshing
+// the main screen does: through loadAll() (a copy of every Reminder) and
+// through columns() (the cached ReminderColumns). Run with -prof gc to see
+// the bytes each allocates per call.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ModelBenchmark {
+    @Param({"10", "1000", "10000", "100000"})
+    int size;
+
+    private ReminderRepository repo;
+    private long[] out;
+    private long now;
+
+    @Setup
+    public void setUp() {
+        repo = new ReminderRepository(new MemoryBackend(), null, new MemoryKeyValueStore());
+        repo.saveAll(BenchData.reminders(size));
+        out = new long[size];
+        now = System.currentTimeMillis();
+    }
+
+    @Benchmark
+    public long[] nextFiresLoadAll() {
+        List<Reminder> all = repo.loadAll();
+        Recurrence.nextFires(all, now, out);
+        return out;
+    }
+
+    @Benchmark
+    public long[] nextFiresColumns() {
+        Recurrence.nextFires(repo.columns(), now, out);
+        return out;
+    }
+
+    // Keeps disk I/O out of the numbers
+    private static final class MemoryBackend implements StorageBackend {
+        @Override
+        public boolean exists() {
+            return false;
+        }
+
+        @Override
+        public void load(IntMap<Reminder> into) {
+        }
+
+        @Override
+        public void upsert(Reminder r, IntMap<Reminder> all) {
+        }
+
+        @Override
+        public void delete(int id, IntMap<Reminder> all) {
+        }
+
+        @Override
+        public void replaceAll(IntMap<Reminder> all) {
+        }
+
+        @Override
+        public void sync(IntMap<Reminder> all) {
+        }
+
+        @Override
+        public long getBytesWritten() {
+            return 0;
+        }
+
+        @Override
+        public void clear() {
+        }
+    }
+}
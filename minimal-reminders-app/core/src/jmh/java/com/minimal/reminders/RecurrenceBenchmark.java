@@ -0,0 +1,47 @@
+package com.minimal.reminders;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Next-fire computation: one reminder (what schedule() does per edit) and
+// the whole list in one pass (what building the alarm queue does).
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RecurrenceBenchmark {
+    @Param({"10", "1000", "10000", "100000"})
+    int size;
+
+    private List<Reminder> reminders;
+    private long[] out;
+    private long now;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        reminders = BenchData.reminders(size);
+        out = new long[size];
+        now = System.currentTimeMillis();
+    }
+
+    @Benchmark
+    public long nextFire() {
+        Reminder r = reminders.get(next++ % size);
+        return Recurrence.nextFire(r.hour, r.minute, r.days, now);
+    }
+
+    @Benchmark
+    public long[] nextFires() {
+        Recurrence.nextFires(reminders, now, out);
+        return out;
+    }
+}
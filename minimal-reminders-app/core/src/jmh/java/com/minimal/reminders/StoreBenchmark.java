@@ -0,0 +1,91 @@
+package com.minimal.reminders;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// ReminderRepository on top of JournalBackend, with real files in a temp dir.
+//   load:     cold start, i.e. read snapshot + journal and copy out the list
+//   saveAll:  rewrite everything (snapshot + fsync)
+//   save:     one edit, committed (journal append + fsync)
+//   saveBurst: BURST edits coalesced into one commit, as the write-behind does
+//   findById: lookup in the warm cache
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StoreBenchmark {
+    private static final int BURST = 20;
+
+    @Param({"10", "1000", "10000", "100000"})
+    int size;
+
+    private File dir;
+    private List<Reminder> reminders;
+    private ReminderRepository repo;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dir = BenchData.tempDir();
+        reminders = BenchData.reminders(size);
+        repo = open();
+        repo.saveAll(reminders);
+        repo.flush();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchData.deleteDir(dir);
+    }
+
+    @Benchmark
+    public List<Reminder> load() {
+        return open().loadAll();
+    }
+
+    @Benchmark
+    public void saveAll() {
+        repo.saveAll(reminders);
+        repo.flush();
+    }
+
+    @Benchmark
+    public void save() {
+        edit();
+        repo.flush();
+    }
+
+    @Benchmark
+    public void saveBurst() {
+        for (int i = 0; i < BURST; i++) edit();
+        repo.flush();
+    }
+
+    @Benchmark
+    public Reminder findById() {
+        return repo.findById(1 + (next++ % size));
+    }
+
+    private void edit() {
+        Reminder r = reminders.get(next++ % size);
+        r.minute = (r.minute + 1) % 60;
+        repo.save(r);
+    }
+
+    // Commits only on flush()
+    private ReminderRepository open() {
+        return new ReminderRepository(new JournalBackend(dir), null,
+                new MemoryKeyValueStore(), (task, delayMs) -> { });
+    }
+}
@@ -0,0 +1,200 @@
+package com.minimal.reminders;
+
+import java.util.Arrays;
+
+// Upcoming occurrences of every enabled reminder over a rolling horizon,
+// in time order, for "what fires next" questions that should not walk the
+// whole list.
+//
+// Entries are (epoch minute, reminder id) packed into one long, minute in the
+// high half, and kept in a sorted array, so a range is two binary searches
+// and a copy. The index is built on first use and then follows the
+// repository: a changed reminder is only marked stale, on the writer's
+// thread, and the next query removes the entries of every stale reminder in
+// one pass and merges their current occurrences back in, so a burst of edits
+// costs one pass. A saveAll drops the index until the next query. A query
+// reaching past the covered span extends it, and entries already behind the
+// query are trimmed off at the same time.
+public class Agenda implements ReminderRepository.ChangeListener {
+    private static final long MINUTE = 60 * 1000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    // Covered ahead of a query; the span is extended about once a day
+    private static final long HORIZON = 2 * DAY;
+
+    private final ReminderRepository store;
+
+    private long[] entries = new long[0];
+    private int size;
+    private boolean built;
+    // Covered span: every occurrence in [start, end) is in "entries"
+    private long start;
+    private long end;
+    // Reminders changed since the last query, each once
+    private final IntIntMap staleSet = new IntIntMap();
+    private int[] stale = new int[16];
+    private int staleCount;
+
+    public Agenda(ReminderRepository store) {
+        this.store = store;
+        store.addChangeListener(this);
+    }
+
+    public static long timeOf(long entry) {
+        return (entry >>> 32) * MINUTE;
+    }
+
+    public static int idOf(long entry) {
+        return (int) entry;
+    }
+
+    // Occurrences with from <= time < to, earliest first
+    public synchronized long[] range(long from, long to) {
+        cover(from, to);
+        int lo = search(bound(from));
+        int hi = search(bound(to));
+        return Arrays.copyOfRange(entries, lo, hi);
+    }
+
+    // The first occurrence at or after "from", or -1 if no reminder fires
+    // within the horizon
+    public synchronized long first(long from) {
+        cover(from, from + HORIZON);
+        int i = search(bound(from));
+        return i < size ? entries[i] : -1;
+    }
+
+    public synchronized int size() {
+        if (built) redoStale();
+        return size;
+    }
+
+    @Override
+    public synchronized void changed(int id) {
+        if (!built || staleSet.containsKey(id)) return;
+        staleSet.put(id, 0);
+        if (staleCount == stale.length) stale = Arrays.copyOf(stale, staleCount * 2);
+        stale[staleCount++] = id;
+    }
+
+    @Override
+    public synchronized void replaced() {
+        built = false;
+        entries = new long[0];
+        size = 0;
+        clearStale();
+    }
+
+    private void redoStale() {
+        if (staleCount == 0) return;
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (!staleSet.containsKey(idOf(entries[i]))) entries[n++] = entries[i];
+        }
+        size = n;
+        // Read back now, so changes that were reported out of order still
+        // end up current
+        for (int i = 0; i < staleCount; i++) {
+            Reminder r = store.findById(stale[i]);
+            if (r != null && r.enabled) add(r.id, r.hour, r.minute, r.days, start, end);
+        }
+        clearStale();
+        merge(n);
+    }
+
+    private void clearStale() {
+        staleSet.clear();
+        staleCount = 0;
+    }
+
+    private void cover(long from, long to) {
+        // Minute boundaries, so packed bounds and the span agree
+        from = Math.floorDiv(from, MINUTE) * MINUTE;
+        to = Math.floorDiv(to + MINUTE - 1, MINUTE) * MINUTE;
+        if (built) redoStale();
+        if (!built || from < start) {
+            start = from;
+            end = from;
+            size = 0;
+            built = true;
+            clearStale();
+        } else if (from - start >= DAY) {
+            int behind = search(bound(from));
+            System.arraycopy(entries, behind, entries, 0, size - behind);
+            size -= behind;
+            start = from;
+            end = Math.max(end, from);
+        }
+        if (to <= end) return;
+
+        long newEnd = Math.max(to, from + HORIZON);
+        ReminderColumns all = store.columns();
+        // Everything new is after what is there: append, then sort the tail
+        int tail = size;
+        for (int i = 0; i < all.size(); i++) {
+            if (all.enabled(i)) add(all.id(i), all.hour(i), all.minute(i), all.days(i), end, newEnd);
+        }
+        Arrays.sort(entries, tail, size);
+        end = newEnd;
+    }
+
+    // Appends the occurrences of a reminder in [from, to)
+    private void add(int id, int hour, int minute, int days, long from, long to) {
+        for (int day = 0; day < 7; day++) {
+            if ((days & (1 << day)) == 0) continue;
+            long t = Recurrence.nextFireForDay(hour, minute, day, from - 1);
+            while (t < to) {
+                append(pack(t, id));
+                t = Recurrence.nextFireForDay(hour, minute, day, t);
+            }
+        }
+    }
+
+    // Sorts the entries from "sorted" on and merges them, from the back,
+    // into the sorted ones before
+    private void merge(int sorted) {
+        if (sorted == size) return;
+        Arrays.sort(entries, sorted, size);
+        long[] tail = Arrays.copyOfRange(entries, sorted, size);
+        int i = sorted - 1;
+        int j = tail.length - 1;
+        for (int k = size - 1; j >= 0; k--) {
+            entries[k] = i >= 0 && entries[i] > tail[j] ? entries[i--] : tail[j--];
+        }
+    }
+
+    private void append(long entry) {
+        grow();
+        entries[size++] = entry;
+    }
+
+    private void grow() {
+        if (size == entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(16, size * 2));
+        }
+    }
+
+    // Index of the first entry >= "key"
+    private int search(long key) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (entries[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Below every entry at or after "time" (ids are positive)
+    private static long bound(long time) {
+        return pack(time + MINUTE - 1, 0);
+    }
+
+    private static long pack(long time, int id) {
+        return Math.floorDiv(time, MINUTE) << 32 | (id & 0xffffffffL);
+    }
+}
@@ -0,0 +1,125 @@
+package com.minimal.reminders;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// Min-heap of (fire time, reminder id), at most one entry per reminder.
+// Keeps each id's heap position so updates and removals are O(log n).
+public class AlarmQueue {
+    private long[] times = new long[16];
+    private int[] ids = new int[16];
+    private int size;
+    // Heap position of each id; every move updates it, unboxed
+    private final IntIntMap positions = new IntIntMap();
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long peekTime() {
+        return times[0];
+    }
+
+    public int peekId() {
+        return ids[0];
+    }
+
+    public boolean contains(int id) {
+        return positions.containsKey(id);
+    }
+
+    public long timeOf(int id) {
+        int pos = positions.get(id, -1);
+        return pos >= 0 ? times[pos] : -1;
+    }
+
+    public void update(int id, long time) {
+        int pos = positions.get(id, -1);
+        if (pos < 0) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            set(size, time, id);
+            siftUp(size++);
+        } else if (time < times[pos]) {
+            times[pos] = time;
+            siftUp(pos);
+        } else {
+            times[pos] = time;
+            siftDown(pos);
+        }
+    }
+
+    public void remove(int id) {
+        int pos = positions.remove(id, -1);
+        if (pos < 0) return;
+        size--;
+        if (pos == size) return;
+        set(pos, times[size], ids[size]);
+        siftDown(pos);
+        siftUp(pos);
+    }
+
+    public int poll() {
+        int id = ids[0];
+        remove(id);
+        return id;
+    }
+
+    // Calls "action" with every id whose time is at most "limit", in no
+    // particular order. Visits only those entries and their children.
+    public void forEachUpTo(long limit, IntConsumer action) {
+        visit(0, limit, action);
+    }
+
+    public void clear() {
+        size = 0;
+        positions.clear();
+    }
+
+    private void visit(int i, long limit, IntConsumer action) {
+        if (i >= size || times[i] > limit) return;
+        action.accept(ids[i]);
+        visit(2 * i + 1, limit, action);
+        visit(2 * i + 2, limit, action);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (times[parent] <= times[i]) break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) break;
+            int right = left + 1;
+            int min = right < size && times[right] < times[left] ? right : left;
+            if (times[i] <= times[min]) break;
+            swap(i, min);
+            i = min;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long t = times[a];
+        int id = ids[a];
+        set(a, times[b], ids[b]);
+        set(b, t, id);
+    }
+
+    private void set(int pos, long time, int id) {
+        times[pos] = time;
+        ids[pos] = id;
+        positions.put(id, pos);
+    }
+}
@@ -0,0 +1,254 @@
+package com.minimal.reminders;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+// What ReminderScheduler has armed with the alarm service: the trigger time
+// and delivery window of each slot. Lets the scheduler skip a set that would
+// change nothing and a cancel of a slot that holds no alarm.
+//
+// Kept in an append-only file: a header (magic, version, trusted flag) and
+// then [slot varint][value varlong][window varlong] records, where a value of
+// 0 means cancelled and UNKNOWN means a call was in flight. UNKNOWN is
+// written before every call and the result after it, so a process killed in
+// between leaves the slot UNKNOWN and it is neither set nor cancelled on
+// trust. There is no fsync: a killed process keeps what it wrote, and a
+// power loss is a reboot, which resets the record anyway. Version 1 files
+// had no windows and are started over, untrusted.
+//
+// A missing or unreadable file is not trusted: alarms set before the record
+// existed may be armed, so absent slots are still cancelled. reset() (after
+// a boot, or when the alarms turn out to be gone) makes it trusted again.
+public class ArmedSlots {
+    public static final long UNKNOWN = 1;
+
+    private static final int MAGIC = 0x524d4153; // "RMAS"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 9;
+    private static final int COMPACT_MIN_RECORDS = 1024;
+    // A probed alarm must be this far out, so it cannot fire during the check
+    private static final long PROBE_MARGIN_MS = 60 * 1000;
+
+    private final File file;
+    // Position of each slot on record in the arrays below, which are in no
+    // particular order: a removal moves the last entry into the gap, so a
+    // per-day registration with thousands of slots never shifts them
+    private final IntIntMap positions = new IntIntMap();
+    private int[] slots = new int[16];
+    private long[] values = new long[16];
+    // 0 for a slot armed exact
+    private long[] windows = new long[16];
+    private int size;
+    private final ReminderCodec.Buffer buf = new ReminderCodec.Buffer(32);
+    private boolean loaded;
+    private boolean verified;
+    private boolean trusted;
+    // Set when the file could not be written; nothing is skipped after that
+    private boolean failed;
+    private FileOutputStream out;
+    private int records;
+    private long callsMade;
+    private long callsSaved;
+
+    public ArmedSlots(File file) {
+        this.file = file;
+    }
+
+    // Checks once per process that the alarms on record still exist (a force
+    // stop drops them without telling the app) and forgets them if not.
+    public synchronized void verify(ReminderScheduler.Alarms alarms, long now) {
+        if (verified) return;
+        verified = true;
+        load();
+        for (int i = 0; i < size; i++) {
+            if (values[i] > now + PROBE_MARGIN_MS) {
+                if (!alarms.isSet(slots[i])) reset();
+                return;
+            }
+        }
+    }
+
+    // Whether setting "slot" to "triggerAt" and "windowMs" would change
+    // anything. A time already passed may have fired, so it is set again.
+    public synchronized boolean needsSet(int slot, long triggerAt, long windowMs, long now) {
+        load();
+        int i = positions.get(slot, -1);
+        if (!failed && i >= 0 && values[i] == triggerAt && windows[i] == windowMs
+                && triggerAt > now) {
+            callsSaved++;
+            return false;
+        }
+        return true;
+    }
+
+    public synchronized boolean needsCancel(int slot) {
+        load();
+        if (!failed && trusted && !positions.containsKey(slot)) {
+            callsSaved++;
+            return false;
+        }
+        return true;
+    }
+
+    // Before the call to the alarm service
+    public synchronized void changing(int slot) {
+        callsMade++;
+        put(slot, UNKNOWN, 0);
+        append(slot, UNKNOWN, 0);
+    }
+
+    // After it; triggerAt is 0 for a cancel
+    public synchronized void changed(int slot, long triggerAt, long windowMs) {
+        put(slot, triggerAt, windowMs);
+        append(slot, triggerAt, windowMs);
+        if (records > Math.max(COMPACT_MIN_RECORDS, size * 2)) rewrite();
+    }
+
+    // The alarm service holds nothing for this app (after a boot or a force stop)
+    public synchronized void reset() {
+        loaded = true;
+        positions.clear();
+        size = 0;
+        trusted = true;
+        failed = false;
+        rewrite();
+    }
+
+    public synchronized long getCallsMade() {
+        return callsMade;
+    }
+
+    public synchronized long getCallsSaved() {
+        return callsSaved;
+    }
+
+    private void load() {
+        if (loaded) return;
+        loaded = true;
+        if (!file.exists()) {
+            rewrite();
+            return;
+        }
+        try {
+            byte[] data = new byte[(int) file.length()];
+            try (FileInputStream in = new FileInputStream(file)) {
+                int n = 0;
+                while (n < data.length) {
+                    int r = in.read(data, n, data.length - n);
+                    if (r < 0) break;
+                    n += r;
+                }
+            }
+            ReminderCodec.Cursor in = new ReminderCodec.Cursor(data, 0);
+            if (data.length < HEADER_SIZE || in.readInt() != MAGIC || in.readInt() != VERSION) {
+                rewrite();
+                return;
+            }
+            trusted = data[in.pos++] != 0;
+            int good = in.pos;
+            try {
+                while (in.pos < data.length) {
+                    int slot = in.readVarint();
+                    long value = in.readVarlong();
+                    long window = in.readVarlong();
+                    put(slot, value, window);
+                    records++;
+                    good = in.pos;
+                }
+            } catch (RuntimeException e) {
+                // Torn last record: the process died while writing it
+            }
+            if (good < data.length) {
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(good);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            positions.clear();
+            size = 0;
+            trusted = false;
+            rewrite();
+        }
+    }
+
+    private void put(int slot, long value, long window) {
+        int i = positions.get(slot, -1);
+        if (value == 0) {
+            if (i < 0) return;
+            positions.remove(slot, -1);
+            if (i < --size) {
+                slots[i] = slots[size];
+                values[i] = values[size];
+                windows[i] = windows[size];
+                positions.put(slots[i], i);
+            }
+            return;
+        }
+        if (i < 0) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+                windows = Arrays.copyOf(windows, size * 2);
+            }
+            i = size++;
+            slots[i] = slot;
+            positions.put(slot, i);
+        }
+        values[i] = value;
+        windows[i] = window;
+    }
+
+    private void append(int slot, long value, long window) {
+        if (failed) return;
+        buf.reset();
+        buf.writeVarint(slot);
+        buf.writeVarlong(value);
+        buf.writeVarlong(window);
+        try {
+            if (out == null) out = new FileOutputStream(file, true);
+            out.write(buf.array(), 0, buf.size());
+            records++;
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    // Replaces the file with the current state
+    private void rewrite() {
+        ReminderCodec.Buffer data = new ReminderCodec.Buffer(HEADER_SIZE + size * 8);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeByte(trusted ? 1 : 0);
+        for (int i = 0; i < size; i++) {
+            data.writeVarint(slots[i]);
+            data.writeVarlong(values[i]);
+            data.writeVarlong(windows[i]);
+        }
+        try {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+            File tmp = new File(file.getPath() + ".tmp");
+            try (FileOutputStream fos = new FileOutputStream(tmp)) {
+                fos.write(data.array(), 0, data.size());
+            }
+            if (!tmp.renameTo(file)) throw new IOException("Cannot replace " + file);
+            records = size;
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(IOException e) {
+        e.printStackTrace();
+        failed = true;
+        // The next process starts untrusted instead of from a stale record
+        file.delete();
+    }
+}
@@ -0,0 +1,711 @@
+package com.minimal.reminders;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// What happened to each notification: fires, dismisses and snoozes, kept in
+// four files in one directory.
+//
+// events.tail takes each flush as fixed 13-byte records ([time:8][id:4]
+// [type:1]), so a torn append loses at most the partial record. Once it holds
+// BLOCK_EVENTS events they are sealed into one block of events.log: times as
+// deltas from the previous event, id and type as one varint, deflated, behind
+// a header with the block's first and last time. An event takes a few bytes
+// there. Sealing also drops the blocks older than RETENTION_DAYS, and scan()
+// skips blocks outside its range by their header alone.
+//
+// Sealing also folds the block into per-day, per-reminder counts, appended to
+// events.daily as one segment per day ([day:4][length:4] then a row per
+// reminder). A flush never touches that file. When a new day begins the
+// trailing segments of the last two days are merged into one each, and about
+// once a month the days past DAILY_RETENTION_DAYS are cut off the front.
+// totals() reads only the segments of the days asked for, found through an
+// index of segment headers, plus the tail; so "snooze rate per reminder over
+// 30 days" reads a few hundred rows and never the raw log, and the counts are
+// never all in memory. A dismiss or snooze answers the same reminder's last
+// unanswered fire; the open fires are saved in events.open at each seal, so
+// a fire and its answer can be in different processes and on different days.
+//
+// History is best-effort: nothing is fsynced. A seal writes the block, then
+// the counts, then a fresh tail, so a crash loses the counts of one block (of
+// a day or two if it hits a merge) and never counts an event twice.
+public class EventLog {
+    public static final int FIRE = 0;
+    public static final int DISMISS = 1;
+    public static final int SNOOZE = 2;
+
+    public static final int RETENTION_DAYS = 90;
+    public static final int DAILY_RETENTION_DAYS = 400;
+    static final int BLOCK_EVENTS = 256;
+
+    private static final int LOG_MAGIC = 0x524d4556; // "RMEV"
+    private static final int TAIL_MAGIC = 0x524d4554; // "RMET"
+    private static final int DAILY_MAGIC = 0x524d4544; // "RMED"
+    private static final int OPEN_MAGIC = 0x524d454f; // "RMEO"
+    private static final int VERSION = 1;
+    // Version 1 of events.daily was one table, rewritten on every flush
+    private static final int DAILY_VERSION = 2;
+    private static final int HEADER_SIZE = 8;
+    // Tail header: magic, version, and the length of events.log when the tail
+    // was started. A log of another length means the tail was already sealed.
+    private static final int TAIL_HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 13;
+    // [first event's time:8][earliest:8][latest:8][count:4][raw length:4]
+    // [packed length:4]
+    private static final int BLOCK_HEADER_SIZE = 36;
+    // [day:4][length of the rows:4]
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+    // A fire nobody answered in this time is no longer waiting for an answer
+    private static final long OPEN_FIRE_MS = 2 * DAY_MS;
+    // Expired days are cut off the counts once this many have piled up
+    private static final int TRIM_SLACK_DAYS = 30;
+
+    private final File log;
+    private final File tail;
+    private final File daily;
+    private final File open;
+
+    private boolean loaded;
+    // Recorded but not yet flushed: [time, id << 2 | type] pairs
+    private long[] pending = new long[16];
+    private int pendingSize;
+    private int tailEvents;
+    // Segments of events.daily in file order: day, offset of the header and
+    // length of the rows. Read on first use.
+    private boolean indexed;
+    private int[] segmentDays = new int[64];
+    private long[] segmentOffsets = new long[64];
+    private int[] segmentLengths = new int[64];
+    private int segments;
+    // Time of each reminder's last unanswered fire, as of the last seal. Read
+    // on first use.
+    private IntMap<Long> openFires;
+
+    public EventLog(File dir) {
+        log = new File(dir, "events.log");
+        tail = new File(dir, "events.tail");
+        daily = new File(dir, "events.daily");
+        open = new File(dir, "events.open");
+    }
+
+    public interface Visitor {
+        void event(long time, int id, int type);
+    }
+
+    // Counts for one reminder over some days
+    public static final class Totals {
+        public int fires;
+        public int dismisses;
+        public int snoozes;
+        // Fires answered by a dismiss or snooze, and how long they waited in all
+        public int answered;
+        public long waitSeconds;
+
+        public double snoozeRate() {
+            return fires > 0 ? (double) snoozes / fires : 0;
+        }
+
+        public long meanWaitSeconds() {
+            return answered > 0 ? waitSeconds / answered : 0;
+        }
+
+        void add(Totals o) {
+            fires += o.fires;
+            dismisses += o.dismisses;
+            snoozes += o.snoozes;
+            answered += o.answered;
+            waitSeconds += o.waitSeconds;
+        }
+    }
+
+    // Buffers one event until the next flush()
+    public synchronized void record(long time, int id, int type) {
+        if (type < FIRE || type > SNOOZE) throw new IllegalArgumentException("Unknown event type " + type);
+        if (pendingSize + 2 > pending.length) pending = Arrays.copyOf(pending, pending.length * 2);
+        pending[pendingSize++] = time;
+        pending[pendingSize++] = (long) id << 2 | type;
+    }
+
+    // Appends the recorded events to the tail, sealing it when full
+    public synchronized void flush() {
+        load();
+        if (pendingSize == 0) return;
+        ReminderCodec.Buffer out = new ReminderCodec.Buffer(pendingSize / 2 * RECORD_SIZE);
+        for (int i = 0; i < pendingSize; i += 2) {
+            writeLong(out, pending[i]);
+            out.writeInt((int) (pending[i + 1] >> 2));
+            out.writeByte((int) (pending[i + 1] & 3));
+        }
+        long now = pending[pendingSize - 2];
+        int count = pendingSize / 2;
+        pendingSize = 0;
+        try {
+            if (!tail.exists()) startTail(log.exists() ? log.length() : HEADER_SIZE);
+            try (FileOutputStream fos = new FileOutputStream(tail, true)) {
+                fos.write(out.array(), 0, out.size());
+            }
+            tailEvents += count;
+            if (tailEvents >= BLOCK_EVENTS) seal(now);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Per reminder, the counts of the days from the one holding "from" to
+    // the one holding "to", both included. Reads the segments of those days
+    // and folds the unsealed tail on top.
+    public synchronized IntMap<Totals> totals(long from, long to) {
+        load();
+        IntMap<Totals> result = new IntMap<>();
+        int first = day(from);
+        int last = day(to);
+        try {
+            index();
+            if (segments > 0) {
+                try (RandomAccessFile f = new RandomAccessFile(daily, "r")) {
+                    byte[] rows = new byte[0];
+                    for (int i = 0; i < segments; i++) {
+                        if (segmentDays[i] < first || segmentDays[i] > last) continue;
+                        int length = segmentLengths[i];
+                        if (rows.length < length) rows = new byte[length];
+                        f.seek(segmentOffsets[i] + SEGMENT_HEADER_SIZE);
+                        f.readFully(rows, 0, length);
+                        readRows(rows, length, result);
+                    }
+                }
+            }
+            if (tail.exists()) {
+                IntMap<Long> fired = new IntMap<>(openFires());
+                Totals outside = new Totals();
+                byte[] data = readTail();
+                ReminderCodec.Cursor in = new ReminderCodec.Cursor(data, TAIL_HEADER_SIZE);
+                while (in.pos + RECORD_SIZE <= data.length) {
+                    long time = readLong(in);
+                    int id = in.readInt();
+                    int type = in.buf[in.pos++];
+                    int day = day(time);
+                    fold(day >= first && day <= last ? row(result, id) : outside, fired, time, id, type);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    // Visits the flushed events in [from, to), in log order. Reads only the
+    // blocks whose span overlaps the range.
+    public synchronized void scan(long from, long to, Visitor visitor) {
+        load();
+        try {
+            if (log.exists()) {
+                try (RandomAccessFile f = new RandomAccessFile(log, "r")) {
+                    long pos = HEADER_SIZE;
+                    byte[] header = new byte[BLOCK_HEADER_SIZE];
+                    while (pos + BLOCK_HEADER_SIZE <= f.length()) {
+                        f.seek(pos);
+                        f.readFully(header);
+                        ReminderCodec.Cursor h = new ReminderCodec.Cursor(header, 0);
+                        long base = readLong(h);
+                        long firstTime = readLong(h);
+                        long lastTime = readLong(h);
+                        int count = h.readInt();
+                        int rawLength = h.readInt();
+                        int packedLength = h.readInt();
+                        pos += BLOCK_HEADER_SIZE + packedLength;
+                        if (lastTime < from || firstTime >= to) continue;
+                        byte[] packed = new byte[packedLength];
+                        f.readFully(packed);
+                        visitBlock(inflate(packed, rawLength), count, base, from, to, visitor);
+                    }
+                }
+            }
+            if (tail.exists()) {
+                byte[] data = readTail();
+                ReminderCodec.Cursor in = new ReminderCodec.Cursor(data, TAIL_HEADER_SIZE);
+                while (in.pos + RECORD_SIZE <= data.length) {
+                    long time = readLong(in);
+                    int id = in.readInt();
+                    int type = in.buf[in.pos++];
+                    if (time >= from && time < to) visitor.event(time, id, type);
+                }
+            }
+        } catch (IOException | DataFormatException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Bytes on disk: raw log (sealed and tail) and counts
+    public synchronized long[] getSizes() {
+        return new long[]{log.length() + tail.length(), daily.length() + open.length()};
+    }
+
+    public synchronized void clear() {
+        pendingSize = 0;
+        tailEvents = 0;
+        segments = 0;
+        indexed = true;
+        openFires = new IntMap<>();
+        log.delete();
+        tail.delete();
+        daily.delete();
+        open.delete();
+        loaded = true;
+    }
+
+    // Adds one event to "t", the counts of its reminder on its day
+    private static void fold(Totals t, IntMap<Long> fired, long time, int id, int type) {
+        if (type == FIRE) {
+            t.fires++;
+            fired.put(id, time);
+            return;
+        }
+        if (type == DISMISS) t.dismisses++;
+        else t.snoozes++;
+        Long at = fired.get(id);
+        if (at != null) {
+            fired.remove(id);
+            t.answered++;
+            t.waitSeconds += Math.max(0, time - at) / 1000;
+        }
+    }
+
+    private static Totals row(IntMap<Totals> rows, int id) {
+        Totals t = rows.get(id);
+        if (t == null) {
+            t = new Totals();
+            rows.put(id, t);
+        }
+        return t;
+    }
+
+    // Moves the tail into a new block at the end of the log
+    private void seal(long now) throws IOException {
+        byte[] data = readTail();
+        ReminderCodec.Cursor in = new ReminderCodec.Cursor(data, TAIL_HEADER_SIZE);
+        ReminderCodec.Buffer raw = new ReminderCodec.Buffer(tailEvents * 6);
+        long base = 0;
+        long firstTime = Long.MAX_VALUE;
+        long lastTime = Long.MIN_VALUE;
+        long previous = 0;
+        int count = 0;
+        // The block's counts by day, and the open fires after it
+        TreeMap<Integer, IntMap<Totals>> days = new TreeMap<>();
+        IntMap<Long> fired = new IntMap<>(openFires());
+        while (in.pos + RECORD_SIZE <= data.length) {
+            long time = readLong(in);
+            int id = in.readInt();
+            int type = in.buf[in.pos++];
+            int day = day(time);
+            IntMap<Totals> rows = days.get(day);
+            if (rows == null) {
+                rows = new IntMap<>();
+                days.put(day, rows);
+            }
+            fold(row(rows, id), fired, time, id, type);
+            if (count == 0) {
+                base = time;
+                previous = time;
+            }
+            // Zigzag: events from different threads may be slightly out of order
+            long delta = time - previous;
+            raw.writeVarlong(delta << 1 ^ delta >> 63);
+            raw.writeVarint(id << 2 | type);
+            previous = time;
+            firstTime = Math.min(firstTime, time);
+            lastTime = Math.max(lastTime, time);
+            count++;
+        }
+        if (count > 0) {
+            byte[] packed = deflate(raw);
+            ReminderCodec.Buffer block = new ReminderCodec.Buffer(BLOCK_HEADER_SIZE + packed.length);
+            writeLong(block, base);
+            writeLong(block, firstTime);
+            writeLong(block, lastTime);
+            block.writeInt(count);
+            block.writeInt(raw.size());
+            block.writeInt(packed.length);
+            block.write(packed, 0, packed.length);
+            boolean fresh = !log.exists() || log.length() < HEADER_SIZE;
+            try (FileOutputStream fos = new FileOutputStream(log, !fresh)) {
+                if (fresh) {
+                    ReminderCodec.Buffer header = new ReminderCodec.Buffer(HEADER_SIZE);
+                    header.writeInt(LOG_MAGIC);
+                    header.writeInt(VERSION);
+                    fos.write(header.array(), 0, header.size());
+                }
+                fos.write(block.array(), 0, block.size());
+            }
+            dropExpired(now - RETENTION_DAYS * DAY_MS);
+            appendCounts(days, day(now));
+            for (int i = fired.size() - 1; i >= 0; i--) {
+                if (fired.valueAt(i) < now - OPEN_FIRE_MS) fired.remove(fired.keyAt(i));
+            }
+            openFires = fired;
+            saveOpen();
+        }
+        // The log has changed length, so a crash before this discards the
+        // stale tail instead of sealing it twice
+        startTail(log.length());
+        tailEvents = 0;
+    }
+
+    // Rewrites the log without the leading blocks that end before "cutoff"
+    private void dropExpired(long cutoff) throws IOException {
+        long keepFrom = HEADER_SIZE;
+        long length = log.length();
+        try (RandomAccessFile f = new RandomAccessFile(log, "r")) {
+            byte[] header = new byte[BLOCK_HEADER_SIZE];
+            while (keepFrom + BLOCK_HEADER_SIZE <= length) {
+                f.seek(keepFrom);
+                f.readFully(header);
+                ReminderCodec.Cursor h = new ReminderCodec.Cursor(header, 16);
+                long lastTime = readLong(h);
+                if (lastTime >= cutoff) break;
+                h.pos = 32;
+                keepFrom += BLOCK_HEADER_SIZE + h.readInt();
+            }
+            if (keepFrom == HEADER_SIZE) return;
+            File tmp = new File(log.getPath() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                byte[] buf = new byte[8192];
+                f.seek(0);
+                f.readFully(buf, 0, HEADER_SIZE);
+                out.write(buf, 0, HEADER_SIZE);
+                f.seek(keepFrom);
+                int n;
+                while ((n = f.read(buf)) > 0) out.write(buf, 0, n);
+            }
+            if (!tmp.renameTo(log)) throw new IOException("Cannot replace " + log);
+        }
+    }
+
+    private void startTail(long logLength) throws IOException {
+        ReminderCodec.Buffer header = new ReminderCodec.Buffer(TAIL_HEADER_SIZE);
+        header.writeInt(TAIL_MAGIC);
+        header.writeInt(VERSION);
+        writeLong(header, logLength);
+        try (FileOutputStream fos = new FileOutputStream(tail)) {
+            fos.write(header.array(), 0, header.size());
+        }
+    }
+
+    // "base" is the time of the block's first event, whose delta is 0
+    private static void visitBlock(byte[] raw, int count, long base, long from, long to, Visitor visitor) {
+        ReminderCodec.Cursor in = new ReminderCodec.Cursor(raw, 0);
+        long time = base;
+        for (int i = 0; i < count; i++) {
+            long zigzag = in.readVarlong();
+            int packed = in.readVarint();
+            time += (zigzag >>> 1) ^ -(zigzag & 1);
+            if (time >= from && time < to) visitor.event(time, packed >>> 2, packed & 3);
+        }
+    }
+
+    private void load() {
+        if (loaded) return;
+        loaded = true;
+        try {
+            if (tail.exists()) {
+                byte[] data = readTail();
+                ReminderCodec.Cursor in = new ReminderCodec.Cursor(data, 0);
+                long logLength = log.exists() ? log.length() : HEADER_SIZE;
+                if (data.length < TAIL_HEADER_SIZE || in.readInt() != TAIL_MAGIC || in.readInt() != VERSION
+                        || readLong(in) != logLength) {
+                    // Already sealed, or not ours
+                    tail.delete();
+                } else {
+                    tailEvents = (data.length - TAIL_HEADER_SIZE) / RECORD_SIZE;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Reads the segment headers of events.daily. A torn last segment is cut
+    // off; a file in another format is dropped, since counts can be lost and
+    // the raw log is kept.
+    private void index() throws IOException {
+        if (indexed) return;
+        indexed = true;
+        segments = 0;
+        if (!daily.exists()) return;
+        try (RandomAccessFile f = new RandomAccessFile(daily, "rw")) {
+            long length = f.length();
+            if (length < HEADER_SIZE || f.readInt() != DAILY_MAGIC || f.readInt() != DAILY_VERSION) {
+                f.setLength(0);
+                return;
+            }
+            long pos = HEADER_SIZE;
+            while (pos + SEGMENT_HEADER_SIZE <= length) {
+                f.seek(pos);
+                int day = f.readInt();
+                int rows = f.readInt();
+                if (rows < 0 || pos + SEGMENT_HEADER_SIZE + rows > length) break;
+                addSegment(day, pos, rows);
+                pos += SEGMENT_HEADER_SIZE + rows;
+            }
+            if (pos < length) f.setLength(pos);
+        }
+    }
+
+    private void addSegment(int day, long offset, int length) {
+        if (segments == segmentDays.length) {
+            segmentDays = Arrays.copyOf(segmentDays, segments * 2);
+            segmentOffsets = Arrays.copyOf(segmentOffsets, segments * 2);
+            segmentLengths = Arrays.copyOf(segmentLengths, segments * 2);
+        }
+        segmentDays[segments] = day;
+        segmentOffsets[segments] = offset;
+        segmentLengths[segments] = length;
+        segments++;
+    }
+
+    // Appends one segment per day of "days". The first time a day after the
+    // last one in the file turns up, the trailing segments of the last two
+    // days are first merged into one per day; that rewrites a day or two of
+    // rows, once a day. Days before today - DAILY_RETENTION_DAYS are cut
+    // once TRIM_SLACK_DAYS of them have piled up.
+    private void appendCounts(TreeMap<Integer, IntMap<Totals>> days, int today) throws IOException {
+        index();
+        // Read afresh if this fails half way
+        indexed = false;
+        if (segments > 0 && days.firstKey() > segmentDays[segments - 1]) {
+            int newest = segmentDays[segments - 1];
+            int from = segments;
+            while (from > 0 && segmentDays[from - 1] >= newest - 1) from--;
+            boolean split = false;
+            for (int i = from + 1; i < segments; i++) split |= segmentDays[i] <= segmentDays[i - 1];
+            if (split) merge(from);
+        }
+        int cutoff = today - DAILY_RETENTION_DAYS;
+        if (segments > 0 && segmentDays[0] < cutoff - TRIM_SLACK_DAYS) dropDays(cutoff);
+
+        boolean fresh = segments == 0;
+        ReminderCodec.Buffer out = new ReminderCodec.Buffer(256);
+        if (fresh) {
+            out.writeInt(DAILY_MAGIC);
+            out.writeInt(DAILY_VERSION);
+        }
+        long offset = fresh ? HEADER_SIZE : daily.length();
+        for (Map.Entry<Integer, IntMap<Totals>> e : days.entrySet()) {
+            int start = out.size();
+            writeSegment(out, e.getKey(), e.getValue());
+            addSegment(e.getKey(), offset, out.size() - start - SEGMENT_HEADER_SIZE);
+            offset += out.size() - start;
+        }
+        try (FileOutputStream fos = new FileOutputStream(daily, !fresh)) {
+            fos.write(out.array(), 0, out.size());
+        }
+        indexed = true;
+    }
+
+    // Rewrites the segments from "from" on as one per day, in place
+    private void merge(int from) throws IOException {
+        TreeMap<Integer, IntMap<Totals>> days = new TreeMap<>();
+        try (RandomAccessFile f = new RandomAccessFile(daily, "rw")) {
+            for (int i = from; i < segments; i++) {
+                IntMap<Totals> rows = days.get(segmentDays[i]);
+                if (rows == null) {
+                    rows = new IntMap<>();
+                    days.put(segmentDays[i], rows);
+                }
+                byte[] data = new byte[segmentLengths[i]];
+                f.seek(segmentOffsets[i] + SEGMENT_HEADER_SIZE);
+                f.readFully(data);
+                readRows(data, data.length, rows);
+            }
+            long offset = segmentOffsets[from];
+            segments = from;
+            ReminderCodec.Buffer out = new ReminderCodec.Buffer(1024);
+            for (Map.Entry<Integer, IntMap<Totals>> e : days.entrySet()) {
+                int start = out.size();
+                writeSegment(out, e.getKey(), e.getValue());
+                addSegment(e.getKey(), offset + start, out.size() - start - SEGMENT_HEADER_SIZE);
+            }
+            f.setLength(offset);
+            f.seek(offset);
+            f.write(out.array(), 0, out.size());
+        }
+    }
+
+    // Rewrites events.daily without the segments of days before "cutoff"
+    private void dropDays(int cutoff) throws IOException {
+        File tmp = new File(daily.getPath() + ".tmp");
+        int kept = 0;
+        try (RandomAccessFile f = new RandomAccessFile(daily, "r");
+             FileOutputStream out = new FileOutputStream(tmp)) {
+            byte[] buf = new byte[HEADER_SIZE];
+            f.readFully(buf);
+            out.write(buf);
+            long offset = HEADER_SIZE;
+            for (int i = 0; i < segments; i++) {
+                if (segmentDays[i] < cutoff) continue;
+                int size = SEGMENT_HEADER_SIZE + segmentLengths[i];
+                if (buf.length < size) buf = new byte[size];
+                f.seek(segmentOffsets[i]);
+                f.readFully(buf, 0, size);
+                out.write(buf, 0, size);
+                segmentDays[kept] = segmentDays[i];
+                segmentOffsets[kept] = offset;
+                segmentLengths[kept] = segmentLengths[i];
+                offset += size;
+                kept++;
+            }
+        }
+        if (!tmp.renameTo(daily)) throw new IOException("Cannot replace " + daily);
+        segments = kept;
+    }
+
+    private static void writeSegment(ReminderCodec.Buffer out, int day, IntMap<Totals> rows) {
+        out.writeInt(day);
+        int lengthAt = out.size();
+        out.writeInt(0);
+        for (int i = 0; i < rows.size(); i++) {
+            Totals t = rows.valueAt(i);
+            out.writeVarint(rows.keyAt(i));
+            out.writeVarint(t.fires);
+            out.writeVarint(t.dismisses);
+            out.writeVarint(t.snoozes);
+            out.writeVarint(t.answered);
+            out.writeVarlong(t.waitSeconds);
+        }
+        int length = out.size() - lengthAt - 4;
+        byte[] b = out.array();
+        b[lengthAt] = (byte) (length >>> 24);
+        b[lengthAt + 1] = (byte) (length >>> 16);
+        b[lengthAt + 2] = (byte) (length >>> 8);
+        b[lengthAt + 3] = (byte) length;
+    }
+
+    // Adds the rows of one segment to "into"
+    private static void readRows(byte[] data, int length, IntMap<Totals> into) {
+        ReminderCodec.Cursor in = new ReminderCodec.Cursor(data, 0);
+        while (in.pos < length) {
+            Totals t = row(into, in.readVarint());
+            t.fires += in.readVarint();
+            t.dismisses += in.readVarint();
+            t.snoozes += in.readVarint();
+            t.answered += in.readVarint();
+            t.waitSeconds += in.readVarlong();
+        }
+    }
+
+    private IntMap<Long> openFires() {
+        if (openFires != null) return openFires;
+        openFires = new IntMap<>();
+        if (!open.exists()) return openFires;
+        try {
+            byte[] data = readFile(open);
+            ReminderCodec.Cursor in = new ReminderCodec.Cursor(data, 0);
+            if (data.length < HEADER_SIZE || in.readInt() != OPEN_MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unknown format in " + open);
+            }
+            int count = in.readVarint();
+            for (int i = 0; i < count; i++) {
+                int id = in.readVarint();
+                openFires.put(id, in.readVarlong());
+            }
+        } catch (IOException | RuntimeException e) {
+            // Those fires are counted as never answered
+            e.printStackTrace();
+            openFires.clear();
+        }
+        return openFires;
+    }
+
+    private void saveOpen() throws IOException {
+        ReminderCodec.Buffer out = new ReminderCodec.Buffer(HEADER_SIZE + openFires.size() * 8);
+        out.writeInt(OPEN_MAGIC);
+        out.writeInt(VERSION);
+        out.writeVarint(openFires.size());
+        for (int i = 0; i < openFires.size(); i++) {
+            out.writeVarint(openFires.keyAt(i));
+            out.writeVarlong(openFires.valueAt(i));
+        }
+        try (FileOutputStream fos = new FileOutputStream(open)) {
+            fos.write(out.array(), 0, out.size());
+        }
+    }
+
+    // The tail, cut back to whole records
+    private byte[] readTail() throws IOException {
+        byte[] data = readFile(tail);
+        int whole = TAIL_HEADER_SIZE + Math.max(0, data.length - TAIL_HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE;
+        return whole < data.length ? Arrays.copyOf(data, whole) : data;
+    }
+
+    // Local day number of "time", as the user saw it then
+    private static int day(long time) {
+        return (int) Math.floorDiv(time + TimeZone.getDefault().getOffset(time), DAY_MS);
+    }
+
+    private static byte[] deflate(ReminderCodec.Buffer raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(raw.array(), 0, raw.size());
+            deflater.finish();
+            ReminderCodec.Buffer out = new ReminderCodec.Buffer(raw.size() / 2 + 64);
+            byte[] buf = new byte[1024];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] packed, int rawLength) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(packed);
+            byte[] raw = new byte[rawLength];
+            int n = 0;
+            while (n < rawLength && !inflater.finished()) {
+                int r = inflater.inflate(raw, n, rawLength - n);
+                if (r == 0 && inflater.needsInput()) break;
+                n += r;
+            }
+            if (n != rawLength) throw new DataFormatException("Short block");
+            return raw;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeLong(ReminderCodec.Buffer out, long v) {
+        out.writeInt((int) (v >>> 32));
+        out.writeInt((int) v);
+    }
+
+    private static long readLong(ReminderCodec.Cursor in) {
+        return (long) in.readInt() << 32 | (in.readInt() & 0xffffffffL);
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int n = 0;
+            while (n < data.length) {
+                int r = in.read(data, n, data.length - n);
+                if (r < 0) break;
+                n += r;
+            }
+            return n < data.length ? Arrays.copyOf(data, n) : data;
+        }
+    }
+}
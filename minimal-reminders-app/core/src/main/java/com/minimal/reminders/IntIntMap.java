@@ -0,0 +1,110 @@
+package com.minimal.reminders;
+
+import java.util.Arrays;
+
+// int -> int hash map with open addressing, for lookups on a hot path where
+// IntMap's sorted insert would shift the arrays and HashMap would box every
+// key and value. Linear probing at most half full; a removal shifts the
+// entries after it back, so there are no tombstones. Integer.MIN_VALUE
+// marks a free slot and cannot be a key.
+public class IntIntMap {
+    private static final int FREE = Integer.MIN_VALUE;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    public IntIntMap() {
+        this(16);
+    }
+
+    public IntIntMap(int capacity) {
+        int slots = Integer.highestOneBit(Math.max(capacity, 4) * 2 - 1) * 2;
+        keys = new int[slots];
+        values = new int[slots];
+        Arrays.fill(keys, FREE);
+        mask = slots - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(int key) {
+        return key != FREE && keys[slot(key)] == key;
+    }
+
+    // Value of "key", or "missing" if there is none
+    public int get(int key, int missing) {
+        if (key == FREE) return missing;
+        int i = slot(key);
+        return keys[i] == key ? values[i] : missing;
+    }
+
+    public void put(int key, int value) {
+        if (key == FREE) throw new IllegalArgumentException("Reserved key " + key);
+        int i = slot(key);
+        if (keys[i] == key) {
+            values[i] = value;
+            return;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length) grow();
+    }
+
+    // Value "key" had, or "missing" if there was none
+    public int remove(int key, int missing) {
+        if (key == FREE) return missing;
+        int i = slot(key);
+        if (keys[i] != key) return missing;
+        int old = values[i];
+        size--;
+        // Move back every later entry of the run that may sit at or after
+        // its home slot only because of this one
+        int gap = i;
+        for (int j = (i + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+            int home = hash(keys[j]);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = FREE;
+        return old;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        size = 0;
+    }
+
+    // Slot holding "key", or the free slot where it would go
+    private int slot(int key) {
+        int i = hash(key);
+        while (keys[i] != key && keys[i] != FREE) i = (i + 1) & mask;
+        return i;
+    }
+
+    private int hash(int key) {
+        int h = key * 0x9e3779b9;
+        return (h ^ h >>> 16) & mask;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(keys, FREE);
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == FREE) continue;
+            int j = slot(oldKeys[i]);
+            keys[j] = oldKeys[i];
+            values[j] = oldValues[i];
+        }
+    }
+}
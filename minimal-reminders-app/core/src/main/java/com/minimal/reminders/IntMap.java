@@ -0,0 +1,88 @@
+package com.minimal.reminders;
+
+import java.util.Arrays;
+
+// int -> value map kept sorted by key, like android.util.SparseArray (which
+// it replaces so this module has no Android dependency). Keys are binary
+// searched; putting a key larger than every existing one is an append,
+// which is how a snapshot written in id order loads.
+public class IntMap<V> {
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    public IntMap() {
+        this(16);
+    }
+
+    public IntMap(int capacity) {
+        capacity = Math.max(capacity, 4);
+        keys = new int[capacity];
+        values = new Object[capacity];
+    }
+
+    // Copy of "other", with room for a few more entries
+    public IntMap(IntMap<V> other) {
+        this(other.size + 4);
+        System.arraycopy(other.keys, 0, keys, 0, other.size);
+        System.arraycopy(other.values, 0, values, 0, other.size);
+        size = other.size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int keyAt(int index) {
+        return keys[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V valueAt(int index) {
+        return (V) values[index];
+    }
+
+    public int indexOfKey(int key) {
+        if (size > 0 && keys[size - 1] < key) return ~size;
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int i = indexOfKey(key);
+        return i >= 0 ? (V) values[i] : null;
+    }
+
+    public void put(int key, V value) {
+        int i = indexOfKey(key);
+        if (i >= 0) {
+            values[i] = value;
+            return;
+        }
+        i = ~i;
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        if (i < size) {
+            System.arraycopy(keys, i, keys, i + 1, size - i);
+            System.arraycopy(values, i, values, i + 1, size - i);
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+    }
+
+    public void remove(int key) {
+        int i = indexOfKey(key);
+        if (i < 0) return;
+        System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+        System.arraycopy(values, i + 1, values, i, size - i - 1);
+        values[--size] = null;
+    }
+
+    public void clear() {
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+    }
+}
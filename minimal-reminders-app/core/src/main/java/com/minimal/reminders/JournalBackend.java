@@ -0,0 +1,315 @@
+package com.minimal.reminders;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+// Append-only storage. Each change becomes one small journal record; records
+// are buffered until sync(), which appends them in one write and fsyncs.
+// Once the journal outgrows the live set it is folded into a fresh snapshot
+// and truncated. Loading reads the snapshot and replays the journal.
+//
+// Both files share one layout: a header (magic, version) followed by records
+// of [op:1][length:4][payload][crc32:4]. A torn record at the end of the
+// journal (process killed mid-write) is dropped on the next load.
+//
+// Version 1 payloads were JSON; version 2 payloads use ReminderCodec. Files
+// still at version 1 are read through the LegacyDecoder given by the caller
+// (JSON is not available to this module) and rewritten at the current version.
+//
+// A RecordSnapshot, if given, is kept in step with every commit, stamped with
+// the state of the two files, and answers peek() for processes that have not
+// loaded.
+public class JournalBackend implements StorageBackend {
+    private static final int MAGIC = 0x524d4a4c; // "RMJL"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_OVERHEAD = 9;
+
+    private static final byte OP_UPSERT = 1;
+    private static final byte OP_DELETE = 2;
+
+    // Compact once the journal holds more records than this many live entries
+    private static final int COMPACT_MIN_RECORDS = 256;
+
+    public interface LegacyDecoder {
+        Reminder decode(byte[] data, int offset, int length) throws Exception;
+    }
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private final LegacyDecoder v1Decoder;
+    private final RecordSnapshot records;
+    // Ids changed since the last sync (null values for deletions)
+    private final IntMap<Reminder> unsynced = new IntMap<>();
+    private final ReminderCodec.Buffer buf = new ReminderCodec.Buffer(256);
+    private final ReminderCodec.Buffer payload = new ReminderCodec.Buffer(64);
+    // Records waiting for sync()
+    private final ReminderCodec.Buffer pending = new ReminderCodec.Buffer(256);
+    private int pendingRecords;
+    // Set when an append failed; the next sync() rewrites the snapshot instead
+    private boolean needsCompact;
+    private final CRC32 crc = new CRC32();
+    private int journalRecords;
+    private long bytesRead;
+    private long bytesWritten;
+
+    public JournalBackend(File dir) {
+        this(dir, null);
+    }
+
+    public JournalBackend(File dir, LegacyDecoder v1Decoder) {
+        this(dir, v1Decoder, null);
+    }
+
+    public JournalBackend(File dir, LegacyDecoder v1Decoder, RecordSnapshot records) {
+        snapshotFile = new File(dir, "reminders.snapshot");
+        journalFile = new File(dir, "reminders.journal");
+        this.v1Decoder = v1Decoder;
+        this.records = records;
+    }
+
+    @Override
+    public boolean exists() {
+        return snapshotFile.exists() || journalFile.exists();
+    }
+
+    @Override
+    public void load(IntMap<Reminder> into) {
+        try {
+            int oldest = VERSION;
+            if (snapshotFile.exists()) {
+                oldest = Math.min(oldest, replay(snapshotFile, into));
+            }
+            if (journalFile.exists()) {
+                oldest = Math.min(oldest, replay(journalFile, into));
+            }
+            if (oldest < VERSION) {
+                compact(into);
+            }
+            if (records != null) {
+                long[] stamp = getStamp();
+                if (!records.isCurrent(stamp)) records.rewrite(into, stamp);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public Reminder peek(int id) {
+        if (records == null || !records.isCurrent(getStamp())) return UNKNOWN;
+        Reminder r = records.find(id);
+        return r == RecordSnapshot.NOT_STORED ? UNKNOWN : r;
+    }
+
+    // What is on disk: snapshot length and time, journal length. Every
+    // commit changes at least one of them.
+    public long[] getStamp() {
+        return new long[]{snapshotFile.length(), snapshotFile.lastModified(), journalFile.length()};
+    }
+
+    @Override
+    public void upsert(Reminder r, IntMap<Reminder> all) {
+        payload.reset();
+        ReminderCodec.encode(r, payload);
+        writeRecord(pending, OP_UPSERT, payload);
+        pendingRecords++;
+        if (records != null) unsynced.put(r.id, r);
+    }
+
+    @Override
+    public void delete(int id, IntMap<Reminder> all) {
+        payload.reset();
+        payload.writeVarint(id);
+        writeRecord(pending, OP_DELETE, payload);
+        pendingRecords++;
+        if (records != null) unsynced.put(id, null);
+    }
+
+    @Override
+    public void replaceAll(IntMap<Reminder> all) {
+        try {
+            compact(all);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void clear() {
+        snapshotFile.delete();
+        journalFile.delete();
+        journalRecords = 0;
+        pending.reset();
+        pendingRecords = 0;
+        unsynced.clear();
+    }
+
+    @Override
+    public void sync(IntMap<Reminder> all) {
+        try {
+            if (needsCompact) {
+                compact(all);
+                return;
+            }
+            if (pendingRecords == 0) return;
+            long[] before = records != null ? getStamp() : null;
+            boolean fresh = !journalFile.exists() || journalFile.length() < HEADER_SIZE;
+            buf.reset();
+            if (fresh) writeHeader(buf);
+            buf.write(pending.array(), 0, pending.size());
+            try (FileOutputStream fos = new FileOutputStream(journalFile, !fresh)) {
+                fos.write(buf.array(), 0, buf.size());
+                fos.getFD().sync();
+            }
+            bytesWritten += buf.size();
+            journalRecords += pendingRecords;
+            pending.reset();
+            pendingRecords = 0;
+
+            if (journalRecords > Math.max(COMPACT_MIN_RECORDS, all.size())) {
+                compact(all);
+            } else if (records != null) {
+                records.update(unsynced, all, before, getStamp());
+                unsynced.clear();
+            }
+        } catch (IOException e) {
+            // Part of the batch may be on disk; a snapshot of "all" supersedes it
+            needsCompact = true;
+            e.printStackTrace();
+        }
+    }
+
+    private void compact(IntMap<Reminder> all) throws IOException {
+        ReminderCodec.Buffer out = new ReminderCodec.Buffer(HEADER_SIZE + all.size() * 32);
+        writeHeader(out);
+        for (int i = 0; i < all.size(); i++) {
+            payload.reset();
+            ReminderCodec.encode(all.valueAt(i), payload);
+            writeRecord(out, OP_UPSERT, payload);
+        }
+
+        File tmp = new File(snapshotFile.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            fos.write(out.array(), 0, out.size());
+            fos.getFD().sync();
+        }
+        bytesWritten += out.size();
+        if (!tmp.renameTo(snapshotFile)) {
+            throw new IOException("Cannot replace " + snapshotFile);
+        }
+        // Replaying a journal over a snapshot that already contains it is
+        // harmless, so a crash before this point loses nothing.
+        journalFile.delete();
+        journalRecords = 0;
+        pending.reset();
+        pendingRecords = 0;
+        needsCompact = false;
+        if (records != null) {
+            records.rewrite(all, getStamp());
+            unsynced.clear();
+        }
+    }
+
+    // Applies every intact record in the file and returns the file's format
+    // version. A torn or corrupt tail is cut off.
+    private int replay(File file, IntMap<Reminder> into) throws IOException {
+        byte[] data = readFully(file);
+        bytesRead += data.length;
+        if (data.length < HEADER_SIZE) {
+            truncate(file, 0);
+            return VERSION;
+        }
+        ReminderCodec.Cursor in = new ReminderCodec.Cursor(data, 0);
+        int version = in.readInt() == MAGIC ? in.readInt() : -1;
+        if (version < 1 || version > VERSION || (version == 1 && v1Decoder == null)) {
+            throw new IOException("Unknown format in " + file);
+        }
+
+        int records = 0;
+        int good = HEADER_SIZE;
+        try {
+            while (good + RECORD_OVERHEAD <= data.length) {
+                in.pos = good;
+                byte op = data[in.pos++];
+                int len = in.readInt();
+                if (len < 0 || good + RECORD_OVERHEAD + len > data.length) break;
+                int start = in.pos;
+                in.pos += len;
+                int expected = in.readInt();
+                crc.reset();
+                crc.update(op);
+                crc.update(data, start, len);
+                if ((int) crc.getValue() != expected) break;
+
+                in.pos = start;
+                if (op == OP_UPSERT) {
+                    Reminder r = version == 1
+                            ? v1Decoder.decode(data, start, len)
+                            : ReminderCodec.decode(in);
+                    into.put(r.id, r);
+                } else if (op == OP_DELETE) {
+                    into.remove(version == 1 ? in.readInt() : in.readVarint());
+                }
+                good = start + len + 4;
+                records++;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        if (good < data.length) {
+            truncate(file, good);
+        }
+        if (file == journalFile) journalRecords = records;
+        return version;
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int n = 0;
+            while (n < data.length) {
+                int r = in.read(data, n, data.length - n);
+                if (r < 0) break;
+                n += r;
+            }
+            return n == data.length ? data : Arrays.copyOf(data, n);
+        }
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        }
+    }
+
+    private static void writeHeader(ReminderCodec.Buffer out) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    private void writeRecord(ReminderCodec.Buffer out, byte op, ReminderCodec.Buffer payload) {
+        crc.reset();
+        crc.update(op);
+        crc.update(payload.array(), 0, payload.size());
+        out.writeByte(op);
+        out.writeInt(payload.size());
+        out.write(payload.array(), 0, payload.size());
+        out.writeInt((int) crc.getValue());
+    }
+}
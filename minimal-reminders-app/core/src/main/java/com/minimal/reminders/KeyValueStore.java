@@ -0,0 +1,32 @@
+package com.minimal.reminders;
+
+// Small settings the core keeps next to the reminders (id counter, scheduler
+// cursor and mode). Shaped like SharedPreferences, which backs it on the
+// device; MemoryKeyValueStore backs it in benchmarks and the simulator.
+public interface KeyValueStore {
+    boolean contains(String key);
+
+    int getInt(String key, int defValue);
+
+    long getLong(String key, long defValue);
+
+    boolean getBoolean(String key, boolean defValue);
+
+    Editor edit();
+
+    interface Editor {
+        Editor putInt(String key, int value);
+
+        Editor putLong(String key, long value);
+
+        Editor putBoolean(String key, boolean value);
+
+        Editor remove(String key);
+
+        // Asynchronous write, like SharedPreferences.Editor.apply()
+        void apply();
+
+        // Durable before returning, like SharedPreferences.Editor.commit()
+        boolean commit();
+    }
+}
@@ -0,0 +1,102 @@
+package com.minimal.reminders;
+
+import java.util.Arrays;
+
+// Log-linear histogram in the style of HdrHistogram: values below 8 get a
+// bucket each, above that every power of two is split into 8 buckets, so a
+// reported value is within 12.5% of the recorded one. Counts are grown on
+// demand up to the highest bucket used; a histogram of lags up to a few
+// minutes (in ms) needs ~140 counters.
+public class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    // Values are clamped to 2^40: about 35 years of lag in ms, 12.7 days of
+    // handler time in us
+    private static final int MAX_MAGNITUDE = 40;
+
+    private long[] counts = new long[0];
+    private long total;
+    private long max;
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        if (value >= 1L << MAX_MAGNITUDE) value = (1L << MAX_MAGNITUDE) - 1;
+        int i = bucketOf(value);
+        if (i >= counts.length) counts = Arrays.copyOf(counts, i + 1);
+        counts[i]++;
+        total++;
+        if (value > max) max = value;
+    }
+
+    public long count() {
+        return total;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    // Highest value in the bucket holding the given percentile (0-100)
+    public long percentile(double p) {
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * p / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(upperBound(i), max);
+        }
+        return max;
+    }
+
+    public void add(LatencyHistogram other) {
+        if (other.counts.length > counts.length) counts = Arrays.copyOf(counts, other.counts.length);
+        for (int i = 0; i < other.counts.length; i++) counts[i] += other.counts[i];
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    // [bucket count][max] then (bucket delta, count) for each non-empty bucket
+    public void encode(ReminderCodec.Buffer out) {
+        int used = 0;
+        for (long c : counts) if (c != 0) used++;
+        out.writeVarint(used);
+        out.writeVarlong(max);
+        int last = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) continue;
+            out.writeVarint(i - last);
+            out.writeVarlong(counts[i]);
+            last = i;
+        }
+    }
+
+    public static LatencyHistogram decode(ReminderCodec.Cursor in) {
+        LatencyHistogram h = new LatencyHistogram();
+        int used = in.readVarint();
+        h.max = in.readVarlong();
+        int i = 0;
+        for (int k = 0; k < used; k++) {
+            i += in.readVarint();
+            if (i >= h.counts.length) h.counts = Arrays.copyOf(h.counts, i + 1);
+            long c = in.readVarlong();
+            h.counts[i] += c;
+            h.total += c;
+        }
+        return h;
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_COUNT) return (int) value;
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (magnitude - SUB_BITS)) & (SUB_COUNT - 1);
+        return (magnitude - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_COUNT) return bucket;
+        int magnitude = bucket / SUB_COUNT + SUB_BITS - 1;
+        int sub = bucket % SUB_COUNT;
+        long lower = (long) (SUB_COUNT + sub) << (magnitude - SUB_BITS);
+        return lower + (1L << (magnitude - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,169 @@
+package com.minimal.reminders;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Alarm delivery measurements: how late each alarm arrived ("lag", in ms,
+// delivery time minus the trigger time it was set for) and how long the
+// receiver took to handle it ("handler", in microseconds).
+//
+// record() never blocks: it claims a slot in a fixed ring with one atomic
+// increment and publishes it with a per-slot sequence number. drain(), run
+// by a single consumer, folds published slots into per-reminder and overall
+// histograms. If the ring laps the consumer, the overwritten samples are
+// counted as dropped.
+public class LatencyRecorder {
+    private static final int CAPACITY = 256;
+    private static final int MASK = CAPACITY - 1;
+    private static final int FORMAT = 1;
+
+    private final AtomicLong head = new AtomicLong();
+    // Sequence + 1 of the sample in each slot, 0 while being written
+    private final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+    // Two words per slot: [reminder id << 32 | lag ms][handler us]
+    private final AtomicLongArray data = new AtomicLongArray(CAPACITY * 2);
+    private long tail;
+
+    // Touched only by the consumer, under the lock
+    private final Object lock = new Object();
+    private final IntMap<LatencyHistogram[]> byReminder = new IntMap<>();
+    private LatencyHistogram lag = new LatencyHistogram();
+    private LatencyHistogram handler = new LatencyHistogram();
+    private long dropped;
+
+    // reminderId 0 means the alarm found nothing to notify
+    public void record(int reminderId, long lagMs, long handlerMicros) {
+        long seq = head.getAndIncrement();
+        int i = (int) (seq & MASK);
+        long lagBits = Math.max(0, Math.min(lagMs, Integer.MAX_VALUE));
+        published.set(i, 0);
+        data.set(i * 2, ((long) reminderId << 32) | lagBits);
+        data.set(i * 2 + 1, handlerMicros);
+        published.set(i, seq + 1);
+    }
+
+    // Moves everything recorded so far into the histograms. Returns the
+    // number of samples taken.
+    public int drain() {
+        synchronized (lock) {
+            int taken = 0;
+            long end = head.get();
+            if (end - tail > CAPACITY) {
+                dropped += end - tail - CAPACITY;
+                tail = end - CAPACITY;
+            }
+            while (tail < end) {
+                int i = (int) (tail & MASK);
+                long seq = published.get(i);
+                if (seq == 0 || seq < tail + 1) break; // still being written
+                long w0 = data.get(i * 2);
+                long w1 = data.get(i * 2 + 1);
+                // Overwritten while we were reading it
+                if (seq != tail + 1 || published.get(i) != seq) {
+                    dropped++;
+                    tail++;
+                    continue;
+                }
+                add((int) (w0 >>> 32), w0 & 0xffffffffL, w1);
+                tail++;
+                taken++;
+            }
+            return taken;
+        }
+    }
+
+    private void add(int reminderId, long lagMs, long handlerMicros) {
+        lag.record(lagMs);
+        handler.record(handlerMicros);
+        if (reminderId == 0) return;
+        LatencyHistogram[] h = byReminder.get(reminderId);
+        if (h == null) {
+            h = new LatencyHistogram[]{new LatencyHistogram(), new LatencyHistogram()};
+            byReminder.put(reminderId, h);
+        }
+        h[0].record(lagMs);
+        h[1].record(handlerMicros);
+    }
+
+    public void clear() {
+        synchronized (lock) {
+            drain();
+            byReminder.clear();
+            lag = new LatencyHistogram();
+            handler = new LatencyHistogram();
+            dropped = 0;
+        }
+    }
+
+    // [format][dropped][overall lag][overall handler][reminder count]
+    // then per reminder [id][lag][handler]
+    public byte[] encode() {
+        synchronized (lock) {
+            ReminderCodec.Buffer out = new ReminderCodec.Buffer(256 + byReminder.size() * 32);
+            out.writeVarint(FORMAT);
+            out.writeVarlong(dropped);
+            lag.encode(out);
+            handler.encode(out);
+            out.writeVarint(byReminder.size());
+            for (int k = 0; k < byReminder.size(); k++) {
+                out.writeVarint(byReminder.keyAt(k));
+                byReminder.valueAt(k)[0].encode(out);
+                byReminder.valueAt(k)[1].encode(out);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    // Merges previously encoded data into this recorder
+    public void load(byte[] bytes) {
+        synchronized (lock) {
+            ReminderCodec.Cursor in = new ReminderCodec.Cursor(bytes, 0);
+            if (in.readVarint() != FORMAT) return;
+            dropped += in.readVarlong();
+            lag.add(LatencyHistogram.decode(in));
+            handler.add(LatencyHistogram.decode(in));
+            int n = in.readVarint();
+            for (int k = 0; k < n; k++) {
+                int id = in.readVarint();
+                LatencyHistogram l = LatencyHistogram.decode(in);
+                LatencyHistogram h = LatencyHistogram.decode(in);
+                LatencyHistogram[] mine = byReminder.get(id);
+                if (mine == null) {
+                    byReminder.put(id, new LatencyHistogram[]{l, h});
+                } else {
+                    mine[0].add(l);
+                    mine[1].add(h);
+                }
+            }
+        }
+    }
+
+    // Human-readable summary. "names" maps reminder ids to labels (may be null).
+    public String dump(IntMap<String> names) {
+        synchronized (lock) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("lag = delivery - scheduled (ms), handler = receiver run time (us)\n");
+            sb.append("samples dropped: ").append(dropped).append('\n');
+            line(sb, "all", lag, handler);
+            for (int k = 0; k < byReminder.size(); k++) {
+                int id = byReminder.keyAt(k);
+                String name = names != null ? names.get(id) : null;
+                line(sb, "#" + id + (name != null ? " " + name : ""),
+                        byReminder.valueAt(k)[0], byReminder.valueAt(k)[1]);
+            }
+            return sb.toString();
+        }
+    }
+
+    private static void line(StringBuilder sb, String label, LatencyHistogram lag, LatencyHistogram handler) {
+        sb.append(label).append('\n');
+        sb.append(String.format(Locale.ROOT,
+                "  lag     n=%d p50=%d p90=%d p99=%d max=%d\n",
+                lag.count(), lag.percentile(50), lag.percentile(90), lag.percentile(99), lag.max()));
+        sb.append(String.format(Locale.ROOT,
+                "  handler n=%d p50=%d p90=%d p99=%d max=%d\n",
+                handler.count(), handler.percentile(50), handler.percentile(90),
+                handler.percentile(99), handler.max()));
+    }
+}
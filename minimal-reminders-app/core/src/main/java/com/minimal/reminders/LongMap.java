@@ -0,0 +1,94 @@
+package com.minimal.reminders;
+
+import java.util.Arrays;
+
+// long -> value hash map with open addressing, the IntIntMap layout with
+// long keys and object values, so a lookup boxes nothing. Values cannot be
+// null: a null value marks a free slot, which leaves every key usable.
+public class LongMap<V> {
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    public LongMap() {
+        this(16);
+    }
+
+    public LongMap(int capacity) {
+        int slots = Integer.highestOneBit(Math.max(capacity, 4) * 2 - 1) * 2;
+        keys = new long[slots];
+        values = new Object[slots];
+        mask = slots - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        return (V) values[slot(key)];
+    }
+
+    public void put(long key, V value) {
+        if (value == null) throw new IllegalArgumentException("Null value for " + key);
+        int i = slot(key);
+        if (values[i] != null) {
+            values[i] = value;
+            return;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length) grow();
+    }
+
+    public void remove(long key) {
+        int i = slot(key);
+        if (values[i] == null) return;
+        size--;
+        // Move back every later entry of the run that may sit at or after
+        // its home slot only because of this one
+        int gap = i;
+        for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = hash(keys[j]);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        values[gap] = null;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    // Slot holding "key", or the free slot where it would go
+    private int slot(long key) {
+        int i = hash(key);
+        while (values[i] != null && keys[i] != key) i = (i + 1) & mask;
+        return i;
+    }
+
+    private int hash(long key) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ h >>> 32) & mask;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new Object[oldKeys.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] == null) continue;
+            int j = slot(oldKeys[i]);
+            keys[j] = oldKeys[i];
+            values[j] = oldValues[i];
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.minimal.reminders;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// KeyValueStore in a HashMap. Counts writes so the simulator can report how
+// much settings traffic a run generated.
+public class MemoryKeyValueStore implements KeyValueStore {
+    private final Map<String, Object> values = new HashMap<>();
+    private long applies;
+    private long commits;
+    private long keysWritten;
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    @Override
+    public synchronized int getInt(String key, int defValue) {
+        Object v = values.get(key);
+        return v instanceof Integer ? (Integer) v : defValue;
+    }
+
+    @Override
+    public synchronized long getLong(String key, long defValue) {
+        Object v = values.get(key);
+        return v instanceof Long ? (Long) v : defValue;
+    }
+
+    @Override
+    public synchronized boolean getBoolean(String key, boolean defValue) {
+        Object v = values.get(key);
+        return v instanceof Boolean ? (Boolean) v : defValue;
+    }
+
+    @Override
+    public Editor edit() {
+        return new MemoryEditor();
+    }
+
+    public synchronized long getApplies() {
+        return applies;
+    }
+
+    public synchronized long getCommits() {
+        return commits;
+    }
+
+    public synchronized long getKeysWritten() {
+        return keysWritten;
+    }
+
+    private class MemoryEditor implements Editor {
+        // null marks a removal
+        private final Map<String, Object> pending = new HashMap<>();
+
+        @Override
+        public Editor putInt(String key, int value) {
+            pending.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            pending.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            pending.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor remove(String key) {
+            pending.put(key, null);
+            return this;
+        }
+
+        @Override
+        public void apply() {
+            synchronized (MemoryKeyValueStore.this) {
+                write();
+                applies++;
+            }
+        }
+
+        @Override
+        public boolean commit() {
+            synchronized (MemoryKeyValueStore.this) {
+                write();
+                commits++;
+            }
+            return true;
+        }
+
+        private void write() {
+            for (Map.Entry<String, Object> e : pending.entrySet()) {
+                if (e.getValue() == null) {
+                    values.remove(e.getKey());
+                } else {
+                    values.put(e.getKey(), e.getValue());
+                }
+            }
+            keysWritten += pending.size();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.minimal.reminders;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+// Substring search over reminder names, for the main screen's search bar.
+//
+// Every three-character window of a lower-cased name is a trigram with a
+// posting list: the ids whose names contain it, sorted. A query of three or
+// more characters intersects the postings of its own trigrams, smallest
+// first, and checks the survivors with a plain substring test, so its cost
+// follows the rarest trigram rather than the size of the list. Shorter
+// queries match too much for an index to help and scan the names.
+//
+// The index is built on first query and then follows the repository like
+// Agenda does: a changed reminder is read back and its trigrams redone, a
+// saveAll drops the index until the next query. It also keeps each
+// reminder's days and time, so filters need no second lookup.
+public class NameIndex implements ReminderRepository.ChangeListener {
+    private static final String[] DAY_NAMES = {"mon", "tue", "wed", "thu", "fri", "sat", "sun"};
+
+    private final ReminderRepository store;
+
+    private boolean built;
+    // Keyed by the trigram's three chars packed into a long, unboxed
+    private final LongMap<Posting> postings = new LongMap<>();
+    // Per id: lower-cased name, and days | (hour * 60 + minute) << 8
+    private final IntMap<String> names = new IntMap<>();
+    private final IntIntMap schedule = new IntIntMap();
+
+    public NameIndex(ReminderRepository store) {
+        this.store = store;
+        store.addChangeListener(this);
+    }
+
+    // What to look for. Everything is optional; an empty query matches all.
+    public static final class Query {
+        // Substring of the name, any case
+        public String text = "";
+        // Matches reminders on any of these days (bit 0 = Mon); 0 for any day
+        public int days;
+        // Time of day in minutes, both ends included; -1 for no bound
+        public int fromMinute = -1;
+        public int toMinute = -1;
+
+        // Reads a search bar: day names ("mon", "tue", ...) pick days, a
+        // "hh:mm-hh:mm" token a time range, and the remaining words are the
+        // name text. "pills mon fri 07:00-09:00"
+        public static Query parse(String input) {
+            Query q = new Query();
+            StringBuilder text = new StringBuilder();
+            for (String token : input.trim().split("\\s+")) {
+                if (token.isEmpty()) continue;
+                String lower = token.toLowerCase(Locale.ROOT);
+                int day = Arrays.asList(DAY_NAMES).indexOf(lower);
+                if (day >= 0) {
+                    q.days |= 1 << day;
+                    continue;
+                }
+                int dash = lower.indexOf('-');
+                if (dash > 0) {
+                    int from = minutes(lower.substring(0, dash));
+                    int to = minutes(lower.substring(dash + 1));
+                    if (from >= 0 && to >= 0) {
+                        q.fromMinute = from;
+                        q.toMinute = to;
+                        continue;
+                    }
+                }
+                if (text.length() > 0) text.append(' ');
+                text.append(token);
+            }
+            q.text = text.toString();
+            return q;
+        }
+
+        public boolean isEmpty() {
+            return text.isEmpty() && days == 0 && fromMinute < 0;
+        }
+
+        // "hh:mm" as minutes of the day, or -1
+        private static int minutes(String s) {
+            int colon = s.indexOf(':');
+            if (colon <= 0) return -1;
+            try {
+                int hour = Integer.parseInt(s.substring(0, colon));
+                int minute = Integer.parseInt(s.substring(colon + 1));
+                if (hour < 0 || hour > 23 || minute < 0 || minute > 59) return -1;
+                return hour * 60 + minute;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+
+    // Ids of the matching reminders, ascending
+    public synchronized int[] search(Query q) {
+        build();
+        String text = q.text.toLowerCase(Locale.ROOT);
+        int[] candidates;
+        int count;
+        if (text.length() < 3) {
+            candidates = new int[names.size()];
+            for (int i = 0; i < candidates.length; i++) candidates[i] = names.keyAt(i);
+            count = candidates.length;
+        } else {
+            List<Posting> lists = new ArrayList<>();
+            for (int i = 0; i + 3 <= text.length(); i++) {
+                Posting p = postings.get(trigram(text, i));
+                if (p == null) return new int[0];
+                lists.add(p);
+            }
+            lists.sort((a, b) -> Integer.compare(a.size, b.size));
+            candidates = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+            count = candidates.length;
+            for (int k = 1; k < lists.size() && count > 0; k++) {
+                count = intersect(candidates, count, lists.get(k));
+            }
+        }
+
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int id = candidates[i];
+            if (matches(id, text, q)) candidates[n++] = id;
+        }
+        return Arrays.copyOf(candidates, n);
+    }
+
+    @Override
+    public synchronized void changed(int id) {
+        if (!built) return;
+        remove(id);
+        // Read back, so calls that arrive out of order still end up current
+        Reminder r = store.findById(id);
+        if (r != null) add(r.id, r.name, r.hour * 60 + r.minute, r.days);
+    }
+
+    @Override
+    public synchronized void replaced() {
+        built = false;
+        postings.clear();
+        names.clear();
+        schedule.clear();
+    }
+
+    private void build() {
+        if (built) return;
+        built = true;
+        ReminderColumns all = store.columns();
+        for (int i = 0; i < all.size(); i++) {
+            add(all.id(i), all.name(i), all.hour(i) * 60 + all.minute(i), all.days(i));
+        }
+    }
+
+    private boolean matches(int id, String text, Query q) {
+        String name = names.get(id);
+        if (name == null || !name.contains(text)) return false;
+        int packed = schedule.get(id, 0);
+        if (q.days != 0 && (packed & q.days) == 0) return false;
+        if (q.fromMinute >= 0) {
+            int minute = packed >>> 8;
+            // A range such as 22:00-02:00 wraps past midnight
+            boolean in = q.fromMinute <= q.toMinute
+                    ? minute >= q.fromMinute && minute <= q.toMinute
+                    : minute >= q.fromMinute || minute <= q.toMinute;
+            if (!in) return false;
+        }
+        return true;
+    }
+
+    private void add(int id, String name, int minuteOfDay, int days) {
+        String lower = name != null ? name.toLowerCase(Locale.ROOT) : "";
+        names.put(id, lower);
+        schedule.put(id, (days & Reminder.ALL_DAYS) | minuteOfDay << 8);
+        for (int i = 0; i + 3 <= lower.length(); i++) {
+            long key = trigram(lower, i);
+            Posting p = postings.get(key);
+            if (p == null) {
+                p = new Posting();
+                postings.put(key, p);
+            }
+            p.add(id);
+        }
+    }
+
+    private void remove(int id) {
+        String lower = names.get(id);
+        if (lower == null) return;
+        names.remove(id);
+        schedule.remove(id, 0);
+        for (int i = 0; i + 3 <= lower.length(); i++) {
+            long key = trigram(lower, i);
+            Posting p = postings.get(key);
+            if (p != null && p.remove(id) && p.size == 0) postings.remove(key);
+        }
+    }
+
+    // Keeps the ids of "ids[0 .. count)" that are also in "p"; returns how many
+    private static int intersect(int[] ids, int count, Posting p) {
+        int n = 0;
+        int j = 0;
+        for (int i = 0; i < count; i++) {
+            int id = ids[i];
+            while (j < p.size && p.ids[j] < id) j++;
+            if (j < p.size && p.ids[j] == id) ids[n++] = id;
+        }
+        return n;
+    }
+
+    private static long trigram(String s, int at) {
+        return (long) s.charAt(at) << 32 | (long) s.charAt(at + 1) << 16 | s.charAt(at + 2);
+    }
+
+    // Sorted ids; a name repeating a trigram adds its id once
+    private static final class Posting {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            int i = Arrays.binarySearch(ids, 0, size, id);
+            if (i >= 0) return;
+            i = ~i;
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            System.arraycopy(ids, i, ids, i + 1, size - i);
+            ids[i] = id;
+            size++;
+        }
+
+        boolean remove(int id) {
+            int i = Arrays.binarySearch(ids, 0, size, id);
+            if (i < 0) return false;
+            System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+            size--;
+            return true;
+        }
+    }
+}
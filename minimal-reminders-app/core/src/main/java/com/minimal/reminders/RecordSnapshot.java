@@ -0,0 +1,239 @@
+package com.minimal.reminders;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+// A read-optimized copy of the reminder list for processes that need one
+// reminder and nothing else (a receiver woken for a snooze). Memory-mapped,
+// so a lookup is a binary search over the id table and one record read, with
+// no parsing of the journal.
+//
+// Layout: a header (magic, version, count, capacity, stamp), then "capacity"
+// ids in ascending order, then "capacity" records of RECORD_SIZE bytes, the
+// record for ids[i] at index i: [flags][hour][minute][days][tolerance]
+// [name length][name UTF-8, up to MAX_NAME bytes]. A longer name is not
+// stored and its lookup is left to the full load.
+//
+// The stamp is the JournalBackend's on-disk state (file lengths and snapshot
+// time) the copy was made from. A reader trusts the copy only while that
+// still matches, so a copy a killed process did not get to update is never
+// used. Changes are written in place: ids only grow, so a new reminder is an
+// append and a deleted one is a dead record. Anything else, or running out
+// of room, rewrites the file to a temporary one that is renamed over it.
+// Records are forced to disk before the new stamp is written.
+public class RecordSnapshot {
+    private static final int MAGIC = 0x524d5253; // "RMRS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 48;
+    private static final int RECORD_SIZE = 64;
+    private static final int MAX_NAME = RECORD_SIZE - 6;
+    private static final int STAMP_AT = 16;
+    private static final int MIN_CAPACITY = 64;
+
+    private static final int FLAG_LIVE = 1;
+    private static final int FLAG_ENABLED = 2;
+    private static final int FLAG_LONG_NAME = 4;
+
+    // Returned by find() for a reminder the copy does not hold in full
+    public static final Reminder NOT_STORED = new Reminder();
+
+    private final File file;
+    private MappedByteBuffer map;
+    private int count;
+    private int capacity;
+
+    public RecordSnapshot(File file) {
+        this.file = file;
+    }
+
+    // Whether the copy matches the primary store in state "stamp"
+    public synchronized boolean isCurrent(long[] stamp) {
+        if (open() && matches(stamp)) return true;
+        // Renamed over since it was mapped
+        close();
+        return open() && matches(stamp);
+    }
+
+    // The reminder with "id", null if there is none, or NOT_STORED if its
+    // name did not fit. Only meaningful while isCurrent().
+    public synchronized Reminder find(int id) {
+        if (!open()) return NOT_STORED;
+        int i = indexOf(id);
+        if (i < 0) return null;
+        int at = recordAt(i);
+        int flags = map.get(at) & 0xff;
+        if ((flags & FLAG_LIVE) == 0) return null;
+        if ((flags & FLAG_LONG_NAME) != 0) return NOT_STORED;
+        Reminder r = new Reminder();
+        r.id = id;
+        r.enabled = (flags & FLAG_ENABLED) != 0;
+        r.hour = map.get(at + 1);
+        r.minute = map.get(at + 2);
+        r.days = map.get(at + 3);
+        r.tolerance = map.get(at + 4) & 0xff;
+        byte[] name = new byte[map.get(at + 5) & 0xff];
+        for (int k = 0; k < name.length; k++) name[k] = map.get(at + 6 + k);
+        r.name = new String(name, StandardCharsets.UTF_8);
+        return r;
+    }
+
+    // Brings the copy up to "all" after the reminders in "changed" (values
+    // null for deletions) were committed, taking the primary from state
+    // "before" to "stamp". A copy that was not at "before" is rewritten.
+    public synchronized void update(IntMap<Reminder> changed, IntMap<Reminder> all,
+                                    long[] before, long[] stamp) {
+        if (!open() || !matches(before)) {
+            rewrite(all, stamp);
+            return;
+        }
+        try {
+            for (int i = 0; i < changed.size(); i++) {
+                int id = changed.keyAt(i);
+                Reminder r = changed.valueAt(i);
+                int at = indexOf(id);
+                if (at >= 0) {
+                    writeRecord(recordAt(at), r);
+                } else if (r == null) {
+                    continue;
+                } else if (count < capacity && (count == 0 || id > idAt(count - 1))) {
+                    map.putInt(HEADER_SIZE + count * 4, id);
+                    writeRecord(recordAt(count), r);
+                    count++;
+                    map.putInt(8, count);
+                } else {
+                    rewrite(all, stamp);
+                    return;
+                }
+            }
+            map.force();
+            writeStamp(map, stamp);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            rewrite(all, stamp);
+        }
+    }
+
+    // Replaces the copy with "all"
+    public synchronized void rewrite(IntMap<Reminder> all, long[] stamp) {
+        close();
+        // Room for half as many again before the next rewrite
+        int cap = Math.max(MIN_CAPACITY, all.size() + all.size() / 2);
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            // Filled through a mapping, so a large list needs no heap buffer
+            try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+                long length = HEADER_SIZE + (long) cap * (4 + RECORD_SIZE);
+                raf.setLength(length);
+                MappedByteBuffer out = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+                out.putInt(0, MAGIC);
+                out.putInt(4, VERSION);
+                out.putInt(8, all.size());
+                out.putInt(12, cap);
+                writeStamp(out, stamp);
+                for (int i = 0; i < all.size(); i++) {
+                    out.putInt(HEADER_SIZE + i * 4, all.keyAt(i));
+                    encode(out, HEADER_SIZE + cap * 4 + i * RECORD_SIZE, all.valueAt(i));
+                }
+                out.force();
+            }
+            if (!tmp.renameTo(file)) throw new IOException("Cannot replace " + file);
+        } catch (IOException e) {
+            // Readers fall back to the full load
+            e.printStackTrace();
+            file.delete();
+        }
+    }
+
+    private boolean open() {
+        if (map != null) return true;
+        if (!file.exists() || file.length() < HEADER_SIZE) return false;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            MappedByteBuffer m = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            int c = m.getInt(8);
+            int cap = m.getInt(12);
+            if (m.getInt(0) != MAGIC || m.getInt(4) != VERSION || c < 0 || c > cap
+                    || HEADER_SIZE + (long) cap * (4 + RECORD_SIZE) > raf.length()) {
+                return false;
+            }
+            map = m;
+            count = c;
+            capacity = cap;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private void close() {
+        // The mapping itself goes with the buffer
+        map = null;
+        count = 0;
+        capacity = 0;
+    }
+
+    private boolean matches(long[] stamp) {
+        if (map == null) return false;
+        for (int k = 0; k < 3; k++) {
+            if (map.getLong(STAMP_AT + k * 8) != stamp[k]) return false;
+        }
+        return true;
+    }
+
+    private static void writeStamp(ByteBuffer out, long[] stamp) {
+        for (int k = 0; k < 3; k++) out.putLong(STAMP_AT + k * 8, stamp[k]);
+    }
+
+    private int indexOf(int id) {
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int v = idAt(mid);
+            if (v < id) {
+                lo = mid + 1;
+            } else if (v > id) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int idAt(int i) {
+        return map.getInt(HEADER_SIZE + i * 4);
+    }
+
+    private int recordAt(int i) {
+        return HEADER_SIZE + capacity * 4 + i * RECORD_SIZE;
+    }
+
+    private void writeRecord(int at, Reminder r) {
+        encode(map, at, r);
+    }
+
+    // r == null writes a dead record
+    private static void encode(ByteBuffer out, int at, Reminder r) {
+        if (r == null) {
+            out.put(at, (byte) 0);
+            return;
+        }
+        byte[] name = r.name != null ? r.name.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        boolean fits = name.length <= MAX_NAME;
+        out.put(at, (byte) (FLAG_LIVE | (r.enabled ? FLAG_ENABLED : 0) | (fits ? 0 : FLAG_LONG_NAME)));
+        out.put(at + 1, (byte) r.hour);
+        out.put(at + 2, (byte) r.minute);
+        out.put(at + 3, r.days);
+        out.put(at + 4, (byte) r.tolerance);
+        out.put(at + 5, (byte) (fits ? name.length : 0));
+        if (fits) {
+            for (int k = 0; k < name.length; k++) out.put(at + 6 + k, name[k]);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.minimal.reminders;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+// Next-occurrence arithmetic for weekly reminders, without Calendar.
+//
+// Results are what AlarmScheduler used to compute with Calendar: take the
+// requested weekday in the current week (which depends on the locale's first
+// day of the week), set the wall-clock time, and if that instant is not after
+// "now" take the same wall time a week later. Wall times are resolved the way
+// GregorianCalendar resolves them, including inside DST gaps and overlaps.
+// The one difference: Calendar reached the following week with
+// add(WEEK_OF_YEAR), which keeps the old offset, so a wall time in a gap or
+// an overlap came out an hour apart depending on which week "now" was in, and
+// an occurrence could fire twice or be skipped. Here both weeks resolve the
+// wall time the same way.
+// The zone's transitions are cached in a small offset table that is rebuilt
+// when the zone or locale changes or "now" leaves the covered range.
+public final class Recurrence {
+    private static final long MINUTE = 60 * 1000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    private static final long WEEK = 7 * DAY;
+
+    private static volatile ZoneTable table;
+
+    private Recurrence() {
+    }
+
+    // days: bit 0 = Mon .. bit 6 = Sun. Returns -1 when no day is selected.
+    public static long nextFire(int hour, int minute, int days, long now) {
+        return nextFire(hour, minute, days, now, zone(now));
+    }
+
+    public static long nextFireForDay(int hour, int minute, int day, long now) {
+        return nextFireForDay(hour, minute, day, now, zone(now));
+    }
+
+    // Next fire time of every reminder in one pass; -1 for disabled reminders
+    // and reminders without days.
+    public static void nextFires(List<Reminder> reminders, long now, long[] out) {
+        ZoneTable z = zone(now);
+        for (int i = 0; i < reminders.size(); i++) {
+            Reminder r = reminders.get(i);
+            out[i] = r.enabled ? nextFire(r.hour, r.minute, r.days, now, z) : -1;
+        }
+    }
+
+    public static void nextFires(ReminderColumns reminders, long now, long[] out) {
+        ZoneTable z = zone(now);
+        for (int i = 0; i < reminders.size(); i++) {
+            out[i] = reminders.enabled(i)
+                    ? nextFire(reminders.hour(i), reminders.minute(i), reminders.days(i), now, z) : -1;
+        }
+    }
+
+    private static long nextFire(int hour, int minute, int days, long now, ZoneTable z) {
+        long next = -1;
+        for (int day = 0; day < 7; day++) {
+            if ((days & (1 << day)) == 0) continue;
+            long t = nextFireForDay(hour, minute, day, now, z);
+            if (next < 0 || t < next) next = t;
+        }
+        return next;
+    }
+
+    private static long nextFireForDay(int hour, int minute, int day, long now, ZoneTable z) {
+        long today = Math.floorDiv(now + z.offsetAt(now), DAY);
+        // 1970-01-01 was a Thursday; weekdays count from Monday = 0
+        int weekday = (int) Math.floorMod(today + 3, 7L);
+        long weekStart = today - Math.floorMod(weekday - z.firstDay, 7);
+        long date = weekStart + Math.floorMod(day - z.firstDay, 7);
+
+        long wall = hour * HOUR + minute * MINUTE;
+        long t = z.resolveWall(date * DAY + wall);
+        if (t <= now) {
+            t = z.resolveWall((date + 7) * DAY + wall);
+        }
+        return t;
+    }
+
+    private static ZoneTable zone(long now) {
+        ZoneTable z = table;
+        TimeZone tz = TimeZone.getDefault();
+        Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        if (z == null || !z.covers(now) || !z.id.equals(tz.getID()) || z.locale != locale) {
+            z = new ZoneTable(tz, locale, now);
+            table = z;
+        }
+        return z;
+    }
+
+    private static final class ZoneTable {
+        // The table spans a little before "now" and well past the furthest
+        // occurrence we ever compute (one week ahead plus the week rollover).
+        private static final long BEFORE = WEEK;
+        private static final long AFTER = 26 * WEEK;
+        private static final long MARGIN = 3 * WEEK;
+
+        final String id;
+        final Locale locale;
+        final int firstDay; // 0 = Mon .. 6 = Sun
+        final long from;
+        final long to;
+        final int initialOffset;
+        final long[] transitions;
+        final int[] offsets; // offset in effect from transitions[i] onwards
+
+        ZoneTable(TimeZone tz, Locale locale, long now) {
+            this.id = tz.getID();
+            this.locale = locale;
+            // Calendar: SUNDAY = 1 .. SATURDAY = 7
+            this.firstDay = (Calendar.getInstance(tz, locale).getFirstDayOfWeek() + 5) % 7;
+            this.from = now - BEFORE;
+            this.to = now + AFTER;
+            this.initialOffset = tz.getOffset(from);
+
+            // Sample hourly and bisect each change down to the millisecond
+            long[] trans = new long[8];
+            int[] offs = new int[8];
+            int n = 0;
+            long prev = from;
+            int prevOffset = initialOffset;
+            for (long t = from + HOUR; t <= to; t += HOUR) {
+                int offset = tz.getOffset(t);
+                if (offset == prevOffset) {
+                    prev = t;
+                    continue;
+                }
+                long lo = prev;
+                long hi = t;
+                while (hi - lo > 1) {
+                    long mid = (lo + hi) >>> 1;
+                    if (tz.getOffset(mid) == prevOffset) lo = mid; else hi = mid;
+                }
+                if (n == trans.length) {
+                    trans = Arrays.copyOf(trans, n * 2);
+                    offs = Arrays.copyOf(offs, n * 2);
+                }
+                trans[n] = hi;
+                offs[n] = offset;
+                n++;
+                prev = t;
+                prevOffset = offset;
+            }
+            this.transitions = Arrays.copyOf(trans, n);
+            this.offsets = Arrays.copyOf(offs, n);
+        }
+
+        boolean covers(long now) {
+            return now >= from && now + MARGIN <= to;
+        }
+
+        int offsetAt(long t) {
+            int offset = initialOffset;
+            for (int i = 0; i < transitions.length && transitions[i] <= t; i++) {
+                offset = offsets[i];
+            }
+            return offset;
+        }
+
+        // Like GregorianCalendar: a wall time belongs to the last transition
+        // whose own wall-clock start (instant + new offset) is not after it.
+        // Times in a gap therefore use the old offset, times in an overlap
+        // the new one.
+        long resolveWall(long wall) {
+            int offset = initialOffset;
+            for (int i = 0; i < transitions.length && transitions[i] + offsets[i] <= wall; i++) {
+                offset = offsets[i];
+            }
+            return wall - offset;
+        }
+    }
+}
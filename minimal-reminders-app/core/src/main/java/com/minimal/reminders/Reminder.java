@@ -0,0 +1,101 @@
+package com.minimal.reminders;
+
+public class Reminder {
+    public static final int ALL_DAYS = 0x7f;
+    // Tolerances offered in the editor, in minutes; 0 is an exact alarm. Half
+    // of each is a wake slot grid (see ReminderScheduler): 15, 30 and 60
+    // minutes nest, and none is below the 10 minute window Android enforces.
+    public static final int[] TOLERANCES = {0, 30, 60, 120};
+    private static final String[] DAY_NAMES = {"Mon", "Tue", "Wed", "Thu", "Fri", "Sat", "Sun"};
+
+    public int id;
+    public String name;
+    public int hour;
+    public int minute;
+    public byte days; // bitmask: bit 0=Mon, 1=Tue, 2=Wed, 3=Thu, 4=Fri, 5=Sat, 6=Sun
+    public boolean enabled;
+    // Minutes an occurrence may be delivered late, so that nearby ones can
+    // share a wakeup. 0 means on time.
+    public int tolerance;
+
+    // Display text cache, keyed on the fields it was built from so that
+    // editing hour/minute/days invalidates it without any bookkeeping
+    private String timeText;
+    private int timeKey = -1;
+    private String daysText;
+    private int daysKey = -1;
+
+    public Reminder() {
+        enabled = true;
+    }
+
+    public boolean hasDay(int day) {
+        return (days & (1 << day)) != 0;
+    }
+
+    public void setDay(int day, boolean on) {
+        if (on) {
+            days |= 1 << day;
+        } else {
+            days &= ~(1 << day);
+        }
+    }
+
+    public Reminder copy() {
+        Reminder r = new Reminder();
+        r.id = id;
+        r.name = name;
+        r.hour = hour;
+        r.minute = minute;
+        r.days = days;
+        r.enabled = enabled;
+        r.tolerance = tolerance;
+        r.timeText = timeText;
+        r.timeKey = timeKey;
+        r.daysText = daysText;
+        r.daysKey = daysKey;
+        return r;
+    }
+
+    public boolean sameContent(Reminder o) {
+        return id == o.id && hour == o.hour && minute == o.minute && days == o.days
+                && enabled == o.enabled && tolerance == o.tolerance
+                && (name == null ? o.name == null : name.equals(o.name));
+    }
+
+    public String getDaysText() {
+        int key = days & ALL_DAYS;
+        if (daysText == null || daysKey != key) {
+            daysText = formatDays(key);
+            daysKey = key;
+        }
+        return daysText;
+    }
+
+    public String getTimeText() {
+        int key = hour * 60 + minute;
+        if (timeText == null || timeKey != key) {
+            timeText = formatTime(hour, minute);
+            timeKey = key;
+        }
+        return timeText;
+    }
+
+    public static String formatTime(int hour, int minute) {
+        return String.format("%02d:%02d", hour, minute);
+    }
+
+    public static String formatDays(int days) {
+        if (days == ALL_DAYS) return "Every day";
+        if (days == 0) return "No days selected";
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 7; i++) {
+            if ((days & (1 << i)) != 0) {
+                if (sb.length() > 0) sb.append(", ");
+                sb.append(DAY_NAMES[i]);
+            }
+        }
+        return sb.toString();
+    }
+}
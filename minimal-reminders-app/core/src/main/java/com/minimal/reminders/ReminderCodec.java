@@ -0,0 +1,157 @@
+package com.minimal.reminders;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Compact binary encoding of a Reminder:
+//   [id: varint][name length: varint][name: UTF-8][hour:1][minute:1][days:1][flags:1]
+//   [tolerance:1, only if FLAG_TOLERANCE]
+// A typical reminder takes 10-20 bytes, against ~80 as JSON.
+public final class ReminderCodec {
+    private static final int FLAG_ENABLED = 1;
+    private static final int FLAG_TOLERANCE = 2;
+
+    private ReminderCodec() {
+    }
+
+    public static void encode(Reminder r, Buffer out) {
+        byte[] name = r.name != null ? r.name.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        out.writeVarint(r.id);
+        out.writeVarint(name.length);
+        out.write(name, 0, name.length);
+        out.writeByte(r.hour);
+        out.writeByte(r.minute);
+        out.writeByte(r.days);
+        out.writeByte((r.enabled ? FLAG_ENABLED : 0) | (r.tolerance != 0 ? FLAG_TOLERANCE : 0));
+        if (r.tolerance != 0) out.writeByte(r.tolerance);
+    }
+
+    public static byte[] encode(Reminder r) {
+        Buffer buf = new Buffer(32);
+        encode(r, buf);
+        return buf.toByteArray();
+    }
+
+    // Decodes one reminder starting at in.pos and advances in.pos past it.
+    public static Reminder decode(Cursor in) {
+        Reminder r = new Reminder();
+        r.id = in.readVarint();
+        int nameLength = in.readVarint();
+        r.name = new String(in.buf, in.pos, nameLength, StandardCharsets.UTF_8);
+        in.pos += nameLength;
+        r.hour = in.buf[in.pos++];
+        r.minute = in.buf[in.pos++];
+        r.days = in.buf[in.pos++];
+        int flags = in.buf[in.pos++];
+        r.enabled = (flags & FLAG_ENABLED) != 0;
+        if ((flags & FLAG_TOLERANCE) != 0) r.tolerance = in.buf[in.pos++] & 0xff;
+        return r;
+    }
+
+    // Growable byte array, cheaper than ByteArrayOutputStream + DataOutputStream
+    public static final class Buffer {
+        byte[] buf;
+        int size;
+
+        public Buffer(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public byte[] array() {
+            return buf;
+        }
+
+        public void reset() {
+            size = 0;
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+
+        public void writeByte(int b) {
+            ensure(1);
+            buf[size++] = (byte) b;
+        }
+
+        public void writeInt(int v) {
+            ensure(4);
+            buf[size++] = (byte) (v >>> 24);
+            buf[size++] = (byte) (v >>> 16);
+            buf[size++] = (byte) (v >>> 8);
+            buf[size++] = (byte) v;
+        }
+
+        public void writeVarint(int v) {
+            ensure(5);
+            while ((v & ~0x7f) != 0) {
+                buf[size++] = (byte) ((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            buf[size++] = (byte) v;
+        }
+
+        public void writeVarlong(long v) {
+            ensure(10);
+            while ((v & ~0x7fL) != 0) {
+                buf[size++] = (byte) ((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            buf[size++] = (byte) v;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            ensure(len);
+            System.arraycopy(b, off, buf, size, len);
+            size += len;
+        }
+
+        private void ensure(int n) {
+            if (size + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + n));
+            }
+        }
+    }
+
+    // Read position over a byte array
+    public static final class Cursor {
+        public final byte[] buf;
+        public int pos;
+
+        public Cursor(byte[] buf, int pos) {
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        public int readInt() {
+            int v = ((buf[pos] & 0xff) << 24) | ((buf[pos + 1] & 0xff) << 16)
+                    | ((buf[pos + 2] & 0xff) << 8) | (buf[pos + 3] & 0xff);
+            pos += 4;
+            return v;
+        }
+
+        public int readVarint() {
+            int v = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = buf[pos++];
+                v |= (b & 0x7f) << shift;
+                if (b >= 0) return v;
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        public long readVarlong() {
+            long v = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                byte b = buf[pos++];
+                v |= (long) (b & 0x7f) << shift;
+                if (b >= 0) return v;
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.minimal.reminders;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+// The reminder list as parallel primitive arrays, in id order: ids, time of
+// day (hour * 60 + minute), day masks, tolerances, an enabled BitSet, and
+// every name in one char buffer. About 20 bytes per reminder plus its name,
+// against well over 100 for a Reminder object with its String, and one pass
+// over it touches a few arrays instead of chasing a pointer per field.
+//
+// Immutable. ReminderRepository builds one per published state on first
+// request and hands the same one to every reader until the next change, so
+// reading the list allocates nothing. get() makes a Reminder on demand for
+// code that wants one, one row at a time.
+public final class ReminderColumns {
+    private final int size;
+    private final int[] ids;
+    private final short[] times;
+    private final byte[] days;
+    private final byte[] tolerances;
+    private final BitSet enabled;
+    private final char[] names;
+    // Name i is names[nameStarts[i] .. nameStarts[i + 1]); null names are empty
+    private final int[] nameStarts;
+
+    ReminderColumns(IntMap<Reminder> all) {
+        size = all.size();
+        ids = new int[size];
+        times = new short[size];
+        days = new byte[size];
+        tolerances = new byte[size];
+        enabled = new BitSet(size);
+        nameStarts = new int[size + 1];
+        int chars = 0;
+        for (int i = 0; i < size; i++) {
+            String name = all.valueAt(i).name;
+            chars += name != null ? name.length() : 0;
+        }
+        names = new char[chars];
+        int at = 0;
+        for (int i = 0; i < size; i++) {
+            Reminder r = all.valueAt(i);
+            ids[i] = r.id;
+            times[i] = (short) (r.hour * 60 + r.minute);
+            days[i] = r.days;
+            tolerances[i] = (byte) r.tolerance;
+            if (r.enabled) enabled.set(i);
+            nameStarts[i] = at;
+            if (r.name != null) {
+                r.name.getChars(0, r.name.length(), names, at);
+                at += r.name.length();
+            }
+        }
+        nameStarts[size] = at;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Row of "id", or a negative number if there is none
+    public int indexOf(int id) {
+        return Arrays.binarySearch(ids, 0, size, id);
+    }
+
+    public int id(int i) {
+        return ids[i];
+    }
+
+    public int hour(int i) {
+        return times[i] / 60;
+    }
+
+    public int minute(int i) {
+        return times[i] % 60;
+    }
+
+    public int days(int i) {
+        return days[i];
+    }
+
+    public boolean enabled(int i) {
+        return enabled.get(i);
+    }
+
+    // Minutes, as Reminder.tolerance
+    public int tolerance(int i) {
+        return tolerances[i] & 0xff;
+    }
+
+    public String name(int i) {
+        return new String(names, nameStarts[i], nameStarts[i + 1] - nameStarts[i]);
+    }
+
+    // Row i of this and row j of "o" hold the same reminder, name included
+    public boolean sameRow(int i, ReminderColumns o, int j) {
+        if (ids[i] != o.ids[j] || times[i] != o.times[j] || days[i] != o.days[j]
+                || tolerances[i] != o.tolerances[j] || enabled.get(i) != o.enabled.get(j)) {
+            return false;
+        }
+        int length = nameStarts[i + 1] - nameStarts[i];
+        if (length != o.nameStarts[j + 1] - o.nameStarts[j]) return false;
+        for (int k = 0; k < length; k++) {
+            if (names[nameStarts[i] + k] != o.names[o.nameStarts[j] + k]) return false;
+        }
+        return true;
+    }
+
+    // A new Reminder with row i
+    public Reminder get(int i) {
+        Reminder r = new Reminder();
+        r.id = ids[i];
+        r.name = name(i);
+        r.hour = hour(i);
+        r.minute = minute(i);
+        r.days = days[i];
+        r.enabled = enabled.get(i);
+        r.tolerance = tolerance(i);
+        return r;
+    }
+}
@@ -0,0 +1,471 @@
+package com.minimal.reminders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+// The reminder list: an id-indexed in-memory copy of the backend, read once
+// on first use. Callers always get copies, so an abandoned edit never leaks
+// into the cache. "legacy", if given, is migrated into "backend" the first
+// time the backend turns out to be empty.
+//
+// The in-memory state is an immutable Snapshot. Readers take the current one
+// and never block. Writers build the next one and publish it with
+// compareAndSet, retrying if another writer got there first, so concurrent
+// writes take effect one after another and none is lost. Ids come from an
+// AtomicInteger.
+//
+// Writes are write-behind when a Timer is given: changes land in the cache
+// at once and are committed to the backend together, as one durable write,
+// once no change has come in for QUIET_MS (or after MAX_DELAY_MS at most).
+// flush() commits right away. Without a Timer every change is committed
+// before returning.
+public class ReminderRepository {
+    private static final String KEY_NEXT_ID = "next_id";
+    private static final long QUIET_MS = 300;
+    private static final long MAX_DELAY_MS = 2000;
+
+    // Marks a pending delete in Snapshot.dirty
+    private static final Reminder DELETED = new Reminder();
+
+    public interface Edit {
+        void apply(Reminder r);
+    }
+
+    public interface ChangeListener {
+        // Reminder "id" was saved, updated or deleted
+        void changed(int id);
+
+        // The whole list was replaced
+        void replaced();
+    }
+
+    public interface Timer {
+        // Runs "task" on a background thread after about "delayMs"
+        void schedule(Runnable task, long delayMs);
+    }
+
+    private final StorageBackend backend;
+    private final StorageBackend legacy;
+    private final KeyValueStore settings;
+    private final Timer timer;
+
+    private final AtomicReference<Snapshot> state = new AtomicReference<>();
+    private final Object loadLock = new Object();
+    // The backend has a single writer
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicLong lastChangeNanos = new AtomicLong();
+    private volatile Runnable flushListener;
+    private final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger nextId = new AtomicInteger();
+    // Keeps the persisted counter from going backwards when two ids are
+    // handed out at once
+    private final Object idLock = new Object();
+    private int persistedNextId;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong peeks = new AtomicLong();
+    private long misses;
+    private long loadTimeMs;
+    private final AtomicLong changes = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+
+    public ReminderRepository(StorageBackend backend, StorageBackend legacy, KeyValueStore settings) {
+        this(backend, legacy, settings, null);
+    }
+
+    public ReminderRepository(StorageBackend backend, StorageBackend legacy, KeyValueStore settings,
+                              Timer timer) {
+        this.backend = backend;
+        this.legacy = legacy;
+        this.settings = settings;
+        this.timer = timer;
+    }
+
+    // Called after each commit, outside the commit lock
+    public void setFlushListener(Runnable listener) {
+        flushListener = listener;
+    }
+
+    // Called after each change is visible to readers, on the writer's thread
+    public void addChangeListener(ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    public List<Reminder> loadAll() {
+        IntMap<Reminder> all = snapshot().all;
+        List<Reminder> list = new ArrayList<>(all.size());
+        for (int i = 0; i < all.size(); i++) {
+            list.add(all.valueAt(i).copy());
+        }
+        return list;
+    }
+
+    // Hands out a copy of each reminder in id order, one at a time, so a
+    // caller that streams them out never holds the whole list twice
+    public void forEach(Consumer<Reminder> action) {
+        IntMap<Reminder> all = snapshot().all;
+        for (int i = 0; i < all.size(); i++) {
+            action.accept(all.valueAt(i).copy());
+        }
+    }
+
+    // The current list in columnar form. The same instance is returned until
+    // the next change, so repeated reads cost nothing.
+    public ReminderColumns columns() {
+        Snapshot s = snapshot();
+        ReminderColumns c = s.columns;
+        if (c == null) {
+            // Two readers may both build it; either result is the same
+            c = new ReminderColumns(s.all);
+            s.columns = c;
+        }
+        return c;
+    }
+
+    public void saveAll(List<Reminder> list) {
+        IntMap<Reminder> all = new IntMap<>(list.size());
+        for (Reminder r : list) {
+            all.put(r.id, r.copy());
+        }
+        Snapshot s;
+        do {
+            s = snapshot();
+        } while (!publish(s, all, new IntMap<>(), new Object()));
+        notifyReplaced();
+        afterChange();
+    }
+
+    // Adds every reminder in "list" under a new id, as one change committed
+    // at once, without waiting for the quiet period. The reminders themselves
+    // are taken over, not copied, so a large import is not held twice; the
+    // caller must not use them afterwards.
+    public int addAll(List<Reminder> list) {
+        snapshot();
+        IntMap<Reminder> added = new IntMap<>(list.size());
+        int first = nextId.getAndAdd(list.size());
+        for (int i = 0; i < list.size(); i++) {
+            Reminder r = list.get(i);
+            r.id = first + i;
+            added.put(r.id, r);
+        }
+        synchronized (idLock) {
+            if (first + list.size() > persistedNextId) {
+                persistedNextId = first + list.size();
+                settings.edit().putInt(KEY_NEXT_ID, persistedNextId).apply();
+            }
+        }
+
+        Snapshot s;
+        IntMap<Reminder> all;
+        IntMap<Reminder> dirty;
+        do {
+            s = snapshot();
+            all = new IntMap<>(s.all.size() + added.size());
+            dirty = new IntMap<>(s.dirty.size() + added.size());
+            putAll(all, s.all);
+            putAll(all, added);
+            putAll(dirty, s.dirty);
+            putAll(dirty, added);
+        } while (!publish(s, all, dirty, s.rewrite));
+        notifyReplaced();
+        flush();
+        return added.size();
+    }
+
+    public int nextId() {
+        snapshot();
+        int id = nextId.getAndIncrement();
+        synchronized (idLock) {
+            if (id + 1 > persistedNextId) {
+                persistedNextId = id + 1;
+                settings.edit().putInt(KEY_NEXT_ID, persistedNextId).apply();
+            }
+        }
+        return id;
+    }
+
+    public Reminder findById(int id) {
+        if (state.get() == null) {
+            // Not loaded: the backend may be able to read just this one
+            Reminder r = backend.peek(id);
+            if (r != StorageBackend.UNKNOWN) {
+                peeks.incrementAndGet();
+                return r;
+            }
+        }
+        Reminder r = snapshot().all.get(id);
+        return r != null ? r.copy() : null;
+    }
+
+    public void save(Reminder reminder) {
+        Reminder copy = reminder.copy();
+        Snapshot s;
+        IntMap<Reminder> all;
+        IntMap<Reminder> dirty;
+        do {
+            s = snapshot();
+            all = new IntMap<>(s.all);
+            all.put(copy.id, copy);
+            dirty = new IntMap<>(s.dirty);
+            dirty.put(copy.id, copy);
+        } while (!publish(s, all, dirty, s.rewrite));
+        notifyChanged(copy.id);
+        afterChange();
+    }
+
+    // Read-modify-write of one reminder, atomic against other writers. "edit"
+    // gets a private copy and may run more than once if writers race, so it
+    // must only change the reminder. Returns a copy of the result, or null if
+    // there is no such reminder.
+    public Reminder update(int id, Edit edit) {
+        Snapshot s;
+        Reminder copy;
+        IntMap<Reminder> all;
+        IntMap<Reminder> dirty;
+        do {
+            s = snapshot();
+            Reminder current = s.all.get(id);
+            if (current == null) return null;
+            copy = current.copy();
+            edit.apply(copy);
+            copy.id = id;
+            all = new IntMap<>(s.all);
+            all.put(id, copy);
+            dirty = new IntMap<>(s.dirty);
+            dirty.put(id, copy);
+        } while (!publish(s, all, dirty, s.rewrite));
+        notifyChanged(id);
+        afterChange();
+        return copy.copy();
+    }
+
+    public void delete(int id) {
+        Snapshot s;
+        IntMap<Reminder> all;
+        IntMap<Reminder> dirty;
+        do {
+            s = snapshot();
+            if (s.all.indexOfKey(id) < 0) return;
+            all = new IntMap<>(s.all);
+            all.remove(id);
+            dirty = new IntMap<>(s.dirty);
+            dirty.put(id, DELETED);
+        } while (!publish(s, all, dirty, s.rewrite));
+        notifyChanged(id);
+        afterChange();
+    }
+
+    public boolean hasPendingWrites() {
+        Snapshot s = state.get();
+        return s != null && s.isDirty();
+    }
+
+    // Commits every pending change in one durable write
+    public void flush() {
+        synchronized (flushLock) {
+            Snapshot f = state.get();
+            if (f == null || !f.isDirty()) return;
+            if (f.rewrite != null) {
+                backend.replaceAll(f.all);
+            } else {
+                for (int i = 0; i < f.dirty.size(); i++) {
+                    Reminder r = f.dirty.valueAt(i);
+                    if (r == DELETED) {
+                        backend.delete(f.dirty.keyAt(i), f.all);
+                    } else {
+                        backend.upsert(r, f.all);
+                    }
+                }
+                backend.sync(f.all);
+            }
+
+            // Drop what was just written; changes made meanwhile stay dirty
+            Snapshot c;
+            Snapshot committed;
+            IntMap<Reminder> dirty;
+            Object rewrite;
+            do {
+                c = state.get();
+                dirty = new IntMap<>();
+                for (int i = 0; i < c.dirty.size(); i++) {
+                    Reminder r = c.dirty.valueAt(i);
+                    if (f.dirty.get(c.dirty.keyAt(i)) != r) dirty.put(c.dirty.keyAt(i), r);
+                }
+                rewrite = c.rewrite == f.rewrite ? null : c.rewrite;
+                committed = new Snapshot(c.all, dirty, rewrite,
+                        dirty.size() > 0 || rewrite != null ? c.firstChangeNanos : 0);
+                // Same list, so the same columns
+                committed.columns = c.columns;
+            } while (!state.compareAndSet(c, committed));
+            commits.incrementAndGet();
+        }
+        Runnable listener = flushListener;
+        if (listener != null) listener.run();
+    }
+
+    public Stats getStats() {
+        Snapshot s = state.get();
+        synchronized (loadLock) {
+            return new Stats(hits.get(), misses, peeks.get(), loadTimeMs, s != null ? s.all.size() : 0,
+                    changes.get(), commits.get(), backend.getBytesWritten());
+        }
+    }
+
+    private boolean publish(Snapshot expected, IntMap<Reminder> all, IntMap<Reminder> dirty, Object rewrite) {
+        long now = System.nanoTime();
+        long first = expected.isDirty() ? expected.firstChangeNanos : now;
+        if (!state.compareAndSet(expected, new Snapshot(all, dirty, rewrite, first))) return false;
+        changes.incrementAndGet();
+        lastChangeNanos.set(now);
+        return true;
+    }
+
+    private static void putAll(IntMap<Reminder> to, IntMap<Reminder> from) {
+        for (int i = 0; i < from.size(); i++) {
+            to.put(from.keyAt(i), from.valueAt(i));
+        }
+    }
+
+    private void notifyChanged(int id) {
+        for (ChangeListener listener : changeListeners) listener.changed(id);
+    }
+
+    private void notifyReplaced() {
+        for (ChangeListener listener : changeListeners) listener.replaced();
+    }
+
+    private void afterChange() {
+        if (timer == null) {
+            flush();
+            return;
+        }
+        scheduleFlush(QUIET_MS);
+    }
+
+    private void scheduleFlush(long delayMs) {
+        if (flushScheduled.compareAndSet(false, true)) {
+            timer.schedule(this::flushWhenQuiet, delayMs);
+        }
+    }
+
+    private void flushWhenQuiet() {
+        Snapshot s = state.get();
+        if (s == null || !s.isDirty()) {
+            flushScheduled.set(false);
+            // A change that saw the flag still set would otherwise go unflushed
+            if (hasPendingWrites()) scheduleFlush(QUIET_MS);
+            return;
+        }
+        long now = System.nanoTime();
+        long quiet = QUIET_MS - (now - lastChangeNanos.get()) / 1000000;
+        long max = MAX_DELAY_MS - (now - s.firstChangeNanos) / 1000000;
+        long wait = Math.min(quiet, max);
+        if (wait > 0) {
+            timer.schedule(this::flushWhenQuiet, wait);
+            return;
+        }
+        // Changes from here on schedule another flush
+        flushScheduled.set(false);
+        flush();
+    }
+
+    private Snapshot snapshot() {
+        Snapshot s = state.get();
+        if (s != null) {
+            hits.incrementAndGet();
+            return s;
+        }
+        synchronized (loadLock) {
+            s = state.get();
+            if (s != null) {
+                hits.incrementAndGet();
+                return s;
+            }
+            misses++;
+            long start = System.nanoTime();
+            IntMap<Reminder> all = new IntMap<>();
+            if (backend.exists()) {
+                backend.load(all);
+            } else if (legacy != null && legacy.exists()) {
+                // First run after upgrading: move the old data over
+                legacy.load(all);
+                backend.replaceAll(all);
+                legacy.clear();
+            }
+            loadTimeMs += (System.nanoTime() - start) / 1000000;
+
+            // Never below an id in use, even if the counter was lost
+            persistedNextId = settings.getInt(KEY_NEXT_ID, 1);
+            int maxId = all.size() > 0 ? all.keyAt(all.size() - 1) : 0;
+            nextId.set(Math.max(persistedNextId, maxId + 1));
+
+            s = new Snapshot(all, new IntMap<>(), null, 0);
+            state.set(s);
+            return s;
+        }
+    }
+
+    // Never modified once published, apart from caching "columns"
+    private static final class Snapshot {
+        final IntMap<Reminder> all;
+        // Latest state of each changed id not committed yet (DELETED for removals)
+        final IntMap<Reminder> dirty;
+        // Set by saveAll until committed; identity tells saveAlls apart
+        final Object rewrite;
+        final long firstChangeNanos;
+        // Built from "all" on first request
+        volatile ReminderColumns columns;
+
+        Snapshot(IntMap<Reminder> all, IntMap<Reminder> dirty, Object rewrite, long firstChangeNanos) {
+            this.all = all;
+            this.dirty = dirty;
+            this.rewrite = rewrite;
+            this.firstChangeNanos = firstChangeNanos;
+        }
+
+        boolean isDirty() {
+            return rewrite != null || dirty.size() > 0;
+        }
+    }
+
+    public static class Stats {
+        public final long hits;
+        public final long misses;
+        // Lookups answered by the backend without a load
+        public final long peeks;
+        public final long loadTimeMs;
+        public final int size;
+        // Mutations applied, durable commits made for them, bytes written
+        public final long changes;
+        public final long commits;
+        public final long bytesWritten;
+
+        Stats(long hits, long misses, long peeks, long loadTimeMs, int size,
+              long changes, long commits, long bytesWritten) {
+            this.hits = hits;
+            this.misses = misses;
+            this.peeks = peeks;
+            this.loadTimeMs = loadTimeMs;
+            this.size = size;
+            this.changes = changes;
+            this.commits = commits;
+            this.bytesWritten = bytesWritten;
+        }
+
+        @Override
+        public String toString() {
+            return "cache: " + size + " reminders, " + hits + " hits, " + misses
+                    + " misses, " + peeks + " unloaded lookups, " + loadTimeMs + " ms loading\n"
+                    + "writes: " + changes + " changes in " + commits + " commits, "
+                    + bytesWritten + " bytes";
+        }
+    }
+}
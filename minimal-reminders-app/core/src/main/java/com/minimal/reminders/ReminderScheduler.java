@@ -0,0 +1,600 @@
+package com.minimal.reminders;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+// Alarm scheduling and alarm handling, independent of Android. The platform
+// supplies the clock, the alarm service and the settings; AlarmScheduler
+// wires in the real ones, the simulator fakes.
+//
+// Alarms live in numbered slots. SLOT_DUE is the single MODE_SINGLE alarm
+// and SLOT_SNOOZE the alarm for the earliest entry of the SnoozeQueue, in
+// either mode; reminder slots are id * 10 + day (0-6) for MODE_PER_DAY.
+// Snoozes used to be one alarm each, at id * 10 + 8; one still pending there
+// fires through onReminderAlarm. Setting a slot replaces whatever was there.
+// Calls go through ArmedSlots, so a slot already in the wanted state is left
+// alone.
+//
+// A reminder with a tolerance does not need an exact alarm. In MODE_SINGLE
+// its occurrence is moved up to a wake slot, the next point on a grid half
+// the tolerance wide, and the alarm for that slot may be delivered within
+// the other half. Occurrences that fall into the same slot share a wakeup,
+// and the grids of the offered tolerances nest, so slots line up across
+// tolerances too. In MODE_PER_DAY the alarm gets a window of the whole
+// tolerance and the alarm service does the batching.
+public class ReminderScheduler {
+
+    // One exact alarm per reminder and selected day
+    public static final int MODE_PER_DAY = 0;
+    // A single exact alarm for the earliest occurrence of any reminder
+    public static final int MODE_SINGLE = 1;
+
+    public static final int SLOT_DUE = 0;
+    public static final int SLOT_SNOOZE = 1;
+    public static final long DEFAULT_SNOOZE_MS = 10 * 60 * 1000;
+    private static final long MIN_SNOOZE_MS = 60 * 1000;
+    private static final long MAX_SNOOZE_MS = 24 * 60 * 60 * 1000;
+
+    private static final long MINUTE = 60 * 1000;
+    private static final long MAX_TOLERANCE_MS =
+            Reminder.TOLERANCES[Reminder.TOLERANCES.length - 1] * MINUTE;
+    // Android 12 and later stretch a shorter alarm window to this
+    public static final long MIN_WINDOW_MS = 10 * MINUTE;
+    // Deliveries closer than this are one wakeup (the alarm service batched them)
+    private static final long SAME_WAKEUP_MS = 1000;
+
+    private static final String KEY_MODE = "mode";
+    private static final String KEY_CURSOR = "cursor";
+    private static final String KEY_SKIP = "skip";
+    private static final String KEY_SNOOZE_MS = "snooze_ms";
+    private static final String KEY_PER_DAY_CLEARED = "per_day_cleared";
+    private static final String KEY_BOOT_COUNT = "boot_count";
+    private static final String KEY_BOOT_STARTED = "boot_started";
+    private static final String KEY_BOOT_DONE_TIME = "boot_done_time";
+    private static final String KEY_BOOT_DONE_ID = "boot_done_id";
+    private static final String KEY_BOOT_REARM_MS = "boot_rearm_ms";
+    private static final String KEY_WAKEUPS = "wakeups";
+    private static final String KEY_EXACT_WAKEUPS = "exact_wakeups";
+    private static final String KEY_WAKE_STATS_SINCE = "wake_stats_since";
+
+    // Reminders re-armed per chunk after boot (up to 7 alarms each)
+    private static final int BOOT_CHUNK = 32;
+
+    public interface Clock {
+        // Wall-clock time, for alarms
+        long now();
+
+        // Time since boot, for measuring durations across process restarts
+        long elapsed();
+    }
+
+    public interface Alarms {
+        // With a windowMs above 0 the alarm may be delivered anywhere from
+        // triggerAt to triggerAt + windowMs
+        void set(int slot, long triggerAt, long windowMs, int reminderId, String name);
+
+        void cancel(int slot);
+
+        // Whether an alarm is registered for the slot
+        boolean isSet(int slot);
+    }
+
+    private final ReminderRepository store;
+    private final KeyValueStore prefs;
+    private final Alarms alarms;
+    private final Clock clock;
+    private final ArmedSlots armed;
+    private final SnoozeQueue snoozes;
+
+    // MODE_SINGLE state: the next occurrence of every enabled reminder. It is
+    // rebuilt from the store when the process starts, relative to the cursor
+    // (the time up to which occurrences have already been dispatched) and the
+    // skip point (occurrences due before it were missed while the device was
+    // off).
+    private AlarmQueue queue;
+    private boolean bootRunning;
+
+    // Alarms for changes the store has not committed yet. They are set once
+    // the commit lands, so an alarm never points at state that a killed
+    // process would lose.
+    private boolean armPending;
+    private final IntMap<Reminder> perDayPending = new IntMap<>();
+
+    // Wakeups so far, and how many there would have been with every reminder
+    // exact: one per distinct occurrence time. Saved with the next settings
+    // write; "counted" holds the occurrence times of the recent wakeups.
+    private boolean wakeStatsLoaded;
+    private long wakeups;
+    private long exactWakeups;
+    private long wakeStatsSince;
+    private long lastWakeup = Long.MIN_VALUE;
+    private final TreeSet<Long> counted = new TreeSet<>();
+
+    public ReminderScheduler(ReminderRepository store, KeyValueStore prefs, Alarms alarms, Clock clock,
+                             ArmedSlots armed, SnoozeQueue snoozes) {
+        this.store = store;
+        this.prefs = prefs;
+        this.alarms = alarms;
+        this.clock = clock;
+        this.armed = armed;
+        this.snoozes = snoozes;
+        store.setFlushListener(this::onStoreFlushed);
+    }
+
+    public int getMode() {
+        return prefs.getInt(KEY_MODE, MODE_SINGLE);
+    }
+
+    public synchronized void setMode(int mode) {
+        if (mode == getMode()) return;
+        List<Reminder> all = store.loadAll();
+        if (mode == MODE_SINGLE) {
+            perDayPending.clear();
+            for (Reminder r : all) cancelPerDay(r.id);
+        } else {
+            cancelAlarm(SLOT_DUE);
+            queue = null;
+        }
+        prefs.edit().putInt(KEY_MODE, mode).remove(KEY_CURSOR).apply();
+        rescheduleAll();
+    }
+
+    public synchronized void schedule(Reminder r) {
+        if (getMode() == MODE_SINGLE) {
+            AlarmQueue q = queue();
+            long next = nextDue(r, clock.now());
+            if (next < 0) {
+                q.remove(r.id);
+            } else {
+                q.update(r.id, next);
+            }
+            armAfterFlush();
+            return;
+        }
+
+        if (!r.enabled) {
+            cancel(r);
+            return;
+        }
+        if (store.hasPendingWrites()) {
+            perDayPending.put(r.id, r.copy());
+            return;
+        }
+        schedulePerDay(r);
+    }
+
+    private void schedulePerDay(Reminder r) {
+        // Schedule one alarm for each active day
+        for (int day = 0; day < 7; day++) {
+            if (!r.hasDay(day)) {
+                cancelAlarm(r.id * 10 + day);
+                continue;
+            }
+            long triggerAt = Recurrence.nextFireForDay(r.hour, r.minute, day, clock.now());
+            setAlarm(r.id * 10 + day, triggerAt, r.tolerance * MINUTE, r.id, r.name);
+        }
+    }
+
+    public synchronized void cancel(Reminder r) {
+        if (getMode() == MODE_SINGLE) {
+            queue().remove(r.id);
+            armAfterFlush();
+            return;
+        }
+        perDayPending.remove(r.id);
+        cancelPerDay(r.id);
+    }
+
+    // Called when the SLOT_DUE alarm fires. Returns every reminder that is
+    // due, advances each to its next occurrence and re-arms for the new head.
+    public synchronized List<Reminder> dispatchDue() {
+        List<Reminder> due = new ArrayList<>();
+        if (getMode() != MODE_SINGLE) return due;
+
+        AlarmQueue q = queue();
+        long now = clock.now();
+        countWakeup(now);
+        while (!q.isEmpty() && q.peekTime() <= now) {
+            long time = q.peekTime();
+            Reminder r = store.findById(q.poll());
+            if (r == null) continue;
+            due.add(r);
+            // The occurrence is the one that was moved up to this slot
+            long grid = slotGrid(r);
+            countOccurrence(grid == 0 ? time
+                    : Recurrence.nextFire(r.hour, r.minute, r.days, time - grid), now);
+            long next = nextDue(r, now);
+            if (next >= 0) q.update(r.id, next);
+        }
+        putWakeStats(prefs.edit().putLong(KEY_CURSOR, now)).apply();
+        // This alarm is spent; the next one cannot wait for the quiet period
+        store.flush();
+        arm();
+        return due;
+    }
+
+    // Called when a reminder's own slot fires (per-day slot or snooze), set
+    // for triggerAt. Returns what to notify.
+    public synchronized List<Reminder> onReminderAlarm(int id, String name, long triggerAt) {
+        long now = clock.now();
+        countWakeup(now);
+        countOccurrence(triggerAt, now);
+        putWakeStats(prefs.edit()).apply();
+        Reminder r = store.findById(id);
+        // In MODE_SINGLE the queue already holds the next occurrence
+        if (r != null && getMode() == MODE_PER_DAY) {
+            schedule(r);
+        }
+        Reminder fired = new Reminder();
+        fired.id = id;
+        // A rename does not re-register the alarm, so its extras may be stale
+        fired.name = r != null ? r.name : name != null ? name : "Reminder";
+        return Collections.singletonList(fired);
+    }
+
+    public long getSnoozeMs() {
+        return prefs.getLong(KEY_SNOOZE_MS, DEFAULT_SNOOZE_MS);
+    }
+
+    public void setSnoozeMs(long ms) {
+        ms = Math.max(MIN_SNOOZE_MS, Math.min(ms, MAX_SNOOZE_MS));
+        prefs.edit().putLong(KEY_SNOOZE_MS, ms).apply();
+    }
+
+    // Snoozes each reminder for delayMs; earlier snoozes stay pending
+    public synchronized void scheduleSnooze(List<Reminder> reminders, long delayMs) {
+        snoozes.add(reminders, clock.now() + delayMs);
+        armSnooze();
+    }
+
+    public void scheduleSnooze(int reminderId, String name) {
+        Reminder r = new Reminder();
+        r.id = reminderId;
+        r.name = name;
+        scheduleSnooze(Collections.singletonList(r), getSnoozeMs());
+    }
+
+    // Called when the SLOT_SNOOZE alarm fires. Returns the snoozed reminders
+    // that are due and re-arms for the next snooze.
+    public synchronized List<Reminder> dispatchSnoozes() {
+        long now = clock.now();
+        countWakeup(now);
+        long time = snoozes.peekTime();
+        List<Reminder> due = snoozes.pollDue(now);
+        for (Reminder fired : due) {
+            Reminder r = store.findById(fired.id);
+            if (r != null) {
+                fired.name = r.name;
+            } else if (fired.name == null || fired.name.isEmpty()) {
+                fired.name = "Reminder";
+            }
+        }
+        if (!due.isEmpty()) countOccurrence(time, now);
+        putWakeStats(prefs.edit()).apply();
+        armSnooze();
+        return due;
+    }
+
+    public int getPendingSnoozes() {
+        return snoozes.size();
+    }
+
+    public synchronized void rescheduleAll() {
+        store.flush();
+        if (getMode() == MODE_SINGLE) {
+            // Start from now: occurrences missed while the device was off are
+            // skipped, as they are in MODE_PER_DAY, unless they are still
+            // within their tolerance.
+            prefs.edit().putLong(KEY_SKIP, clock.now()).apply();
+            queue = null;
+            arm();
+            return;
+        }
+        for (Reminder r : store.loadAll()) {
+            schedule(r);
+        }
+    }
+
+    // Re-arms everything after a reboot. Work is done in chunks, soonest
+    // occurrence first, and progress is committed after each chunk so that a
+    // killed process resumes (see resumeBoot) instead of starting over.
+    // Returns the number of reminders re-armed.
+    public int rearmAfterBoot(int bootCount) {
+        // Nothing survives a reboot but the snooze queue
+        armed.reset();
+        synchronized (this) {
+            armSnooze();
+        }
+        prefs.edit()
+                .putInt(KEY_BOOT_COUNT, bootCount)
+                .putLong(KEY_BOOT_STARTED, clock.elapsed())
+                .remove(KEY_BOOT_DONE_TIME)
+                .remove(KEY_BOOT_DONE_ID)
+                .commit();
+        return runBootRearm();
+    }
+
+    // Finishes a boot re-arm that was interrupted. Cheap when there is none.
+    // Returns the number of reminders re-armed, or -1 if nothing was pending.
+    public int resumeBoot(int bootCount) {
+        if (!prefs.contains(KEY_BOOT_COUNT)) return -1;
+        if (prefs.getInt(KEY_BOOT_COUNT, -1) != bootCount) {
+            // Left over from an earlier boot; BOOT_COMPLETED starts a fresh run
+            clearBootProgress().apply();
+            return -1;
+        }
+        return runBootRearm();
+    }
+
+    public long getLastBootRearmMs() {
+        return prefs.getLong(KEY_BOOT_REARM_MS, -1);
+    }
+
+    private int runBootRearm() {
+        synchronized (this) {
+            if (bootRunning) return -1;
+            bootRunning = true;
+        }
+        try {
+            int count;
+            if (getMode() == MODE_SINGLE) {
+                // A single alarm to set; the queue rebuild is the whole job
+                synchronized (this) {
+                    rescheduleAll();
+                    count = queue().size();
+                }
+            } else {
+                count = rearmPerDay();
+            }
+            long ms = clock.elapsed() - prefs.getLong(KEY_BOOT_STARTED, clock.elapsed());
+            clearBootProgress().putLong(KEY_BOOT_REARM_MS, ms).apply();
+            return count;
+        } finally {
+            synchronized (this) {
+                bootRunning = false;
+            }
+        }
+    }
+
+    // Progress is the (next fire, id) of the last reminder armed. Order is
+    // recomputed on resume; a reminder whose occurrence passed in between
+    // sorts later and is simply armed again.
+    private int rearmPerDay() {
+        List<Reminder> all = store.loadAll();
+        long[] next = new long[all.size()];
+        Recurrence.nextFires(all, clock.now(), next);
+
+        Integer[] order = new Integer[all.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> next[a] != next[b]
+                ? Long.compare(next[a], next[b])
+                : Integer.compare(all.get(a).id, all.get(b).id));
+
+        long doneTime = prefs.getLong(KEY_BOOT_DONE_TIME, Long.MIN_VALUE);
+        int doneId = prefs.getInt(KEY_BOOT_DONE_ID, Integer.MIN_VALUE);
+        int armed = 0;
+        int inChunk = 0;
+        for (int i = 0; i < order.length; i++) {
+            Reminder r = all.get(order[i]);
+            long t = next[order[i]];
+            // Disabled or dayless reminders have nothing to re-arm after boot
+            if (t < 0) continue;
+            if (t < doneTime || (t == doneTime && r.id <= doneId)) continue;
+
+            schedule(r);
+            armed++;
+            if (++inChunk == BOOT_CHUNK || i == order.length - 1) {
+                prefs.edit().putLong(KEY_BOOT_DONE_TIME, t).putInt(KEY_BOOT_DONE_ID, r.id).commit();
+                inChunk = 0;
+            }
+        }
+        return armed;
+    }
+
+    private KeyValueStore.Editor clearBootProgress() {
+        return prefs.edit()
+                .remove(KEY_BOOT_COUNT)
+                .remove(KEY_BOOT_STARTED)
+                .remove(KEY_BOOT_DONE_TIME)
+                .remove(KEY_BOOT_DONE_ID);
+    }
+
+    // Alarm deliveries since getWakeStatsSince(), and the wakeups exact
+    // alarms would have taken for the same occurrences
+    public synchronized long getWakeups() {
+        loadWakeStats();
+        return wakeups;
+    }
+
+    public synchronized long getExactWakeups() {
+        loadWakeStats();
+        return exactWakeups;
+    }
+
+    public synchronized long getWakeStatsSince() {
+        loadWakeStats();
+        return wakeStatsSince;
+    }
+
+    public long getAlarmCallsMade() {
+        return armed.getCallsMade();
+    }
+
+    public long getAlarmCallsSaved() {
+        return armed.getCallsSaved();
+    }
+
+    private void setAlarm(int slot, long triggerAt, long windowMs, int reminderId, String name) {
+        armed.verify(alarms, clock.now());
+        if (!armed.needsSet(slot, triggerAt, windowMs, clock.now())) return;
+        armed.changing(slot);
+        alarms.set(slot, triggerAt, windowMs, reminderId, name);
+        armed.changed(slot, triggerAt, windowMs);
+    }
+
+    private void cancelAlarm(int slot) {
+        armed.verify(alarms, clock.now());
+        if (!armed.needsCancel(slot)) return;
+        armed.changing(slot);
+        alarms.cancel(slot);
+        armed.changed(slot, 0, 0);
+    }
+
+    private void armSnooze() {
+        long t = snoozes.peekTime();
+        if (t < 0) {
+            cancelAlarm(SLOT_SNOOZE);
+        } else {
+            setAlarm(SLOT_SNOOZE, t, 0, 0, null);
+        }
+    }
+
+    private void cancelPerDay(int reminderId) {
+        for (int day = 0; day < 7; day++) {
+            cancelAlarm(reminderId * 10 + day);
+        }
+    }
+
+    private AlarmQueue queue() {
+        if (queue != null) return queue;
+
+        ReminderColumns all = store.columns();
+
+        // Alarms registered by MODE_PER_DAY before switching to MODE_SINGLE
+        // would otherwise fire alongside the queue.
+        if (!prefs.getBoolean(KEY_PER_DAY_CLEARED, false)) {
+            for (int i = 0; i < all.size(); i++) cancelPerDay(all.id(i));
+            prefs.edit().putBoolean(KEY_PER_DAY_CLEARED, true).apply();
+        }
+
+        long now = clock.now();
+        long cursor = prefs.getLong(KEY_CURSOR, now);
+        if (cursor > now) cursor = now;
+        if (!prefs.contains(KEY_CURSOR)) {
+            prefs.edit().putLong(KEY_CURSOR, cursor).apply();
+        }
+
+        long skip = Math.min(prefs.getLong(KEY_SKIP, 0), now);
+
+        long[] next = new long[all.size()];
+        Recurrence.nextFires(all, Math.max(cursor, skip), next);
+        AlarmQueue q = new AlarmQueue();
+        for (int i = 0; i < next.length; i++) {
+            if (all.enabled(i) && all.tolerance(i) != 0) next[i] = owedDue(all.get(i), cursor, skip);
+            if (next[i] >= 0) q.update(all.id(i), next[i]);
+        }
+        queue = q;
+        return q;
+    }
+
+    private void armAfterFlush() {
+        if (store.hasPendingWrites()) {
+            armPending = true;
+        } else {
+            arm();
+        }
+    }
+
+    private synchronized void onStoreFlushed() {
+        if (armPending) {
+            armPending = false;
+            if (getMode() == MODE_SINGLE) arm();
+        }
+        for (int i = 0; i < perDayPending.size(); i++) {
+            schedulePerDay(perDayPending.valueAt(i));
+        }
+        perDayPending.clear();
+    }
+
+    private void arm() {
+        AlarmQueue q = queue();
+        if (q.isEmpty()) {
+            cancelAlarm(SLOT_DUE);
+            return;
+        }
+        long head = q.peekTime();
+        setAlarm(SLOT_DUE, head, window(q, head), 0, null);
+    }
+
+    // How long after "head" the due alarm may be delivered: half the least
+    // tolerance among the reminders due then, and never past the next due
+    // time. When that leaves less than MIN_WINDOW_MS the alarm is exact: the
+    // alarm service would stretch the window, and the reminders due right
+    // behind the head would be late.
+    private long window(AlarmQueue q, long head) {
+        long[] window = {Long.MAX_VALUE};
+        q.forEachUpTo(head, id -> {
+            Reminder r = store.findById(id);
+            window[0] = Math.min(window[0], r != null ? slotGrid(r) : 0);
+        });
+        if (window[0] > 0) {
+            q.forEachUpTo(head + window[0] - 1, id -> {
+                long t = q.timeOf(id);
+                if (t > head) window[0] = Math.min(window[0], t - head);
+            });
+        }
+        return window[0] >= MIN_WINDOW_MS ? window[0] : 0;
+    }
+
+    private void countWakeup(long now) {
+        loadWakeStats();
+        if (now - lastWakeup >= SAME_WAKEUP_MS) wakeups++;
+        lastWakeup = now;
+    }
+
+    // An exact alarm would have woken the device at "occurrence", unless
+    // another reminder already needed a wakeup at that time
+    private void countOccurrence(long occurrence, long now) {
+        // Nothing older can still be delivered
+        while (!counted.isEmpty() && counted.first() < now - 2 * MAX_TOLERANCE_MS) {
+            counted.pollFirst();
+        }
+        if (counted.add(occurrence)) exactWakeups++;
+    }
+
+    private void loadWakeStats() {
+        if (wakeStatsLoaded) return;
+        wakeStatsLoaded = true;
+        wakeups = prefs.getLong(KEY_WAKEUPS, 0);
+        exactWakeups = prefs.getLong(KEY_EXACT_WAKEUPS, 0);
+        wakeStatsSince = prefs.getLong(KEY_WAKE_STATS_SINCE, clock.now());
+    }
+
+    private KeyValueStore.Editor putWakeStats(KeyValueStore.Editor editor) {
+        return editor
+                .putLong(KEY_WAKEUPS, wakeups)
+                .putLong(KEY_EXACT_WAKEUPS, exactWakeups)
+                .putLong(KEY_WAKE_STATS_SINCE, wakeStatsSince);
+    }
+
+    // Due time of the first occurrence strictly after "after", or -1 if the
+    // reminder never fires
+    private static long nextDue(Reminder r, long after) {
+        if (!r.enabled) return -1;
+        return dueTime(Recurrence.nextFire(r.hour, r.minute, r.days, after), slotGrid(r));
+    }
+
+    // Due time of the first occurrence a rebuilt queue still owes: its wake
+    // slot is after the cursor (the last dispatch), and it is not older than
+    // "skip" by more than the reminder's tolerance
+    private static long owedDue(Reminder r, long cursor, long skip) {
+        long grid = slotGrid(r);
+        // Occurrences up to here had their slot dispatched
+        long dispatched = Math.floorDiv(cursor, grid) * grid;
+        long after = Math.max(dispatched, skip - r.tolerance * MINUTE);
+        return dueTime(Recurrence.nextFire(r.hour, r.minute, r.days, after), grid);
+    }
+
+    private static long slotGrid(Reminder r) {
+        return r.tolerance * MINUTE / 2;
+    }
+
+    // The wake slot of an occurrence: the next grid point at or after it
+    private static long dueTime(long occurrence, long grid) {
+        if (grid == 0 || occurrence < 0) return occurrence;
+        return Math.floorDiv(occurrence + grid - 1, grid) * grid;
+    }
+}
@@ -0,0 +1,237 @@
+package com.minimal.reminders;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Bulk export and import of reminders as text, one reminder per line:
+//
+//   # minimal-reminders 1
+//   07:30<TAB>1111100<TAB>on<TAB>0<TAB>Take pills
+//
+// Columns are time, days (Monday first), on/off, tolerance in minutes and
+// the name, with tab, newline, carriage return and backslash escaped. Blank
+// lines and lines starting with '#' are skipped. Both directions stream: the
+// file is never held in memory, only the reminders it describes. Those are
+// the objects ReminderRepository.addAll then keeps, so an import needs little
+// more than the list it adds, but it is all-or-nothing and so held whole
+// until then: a file of more than MAX_IMPORT reminders is refused. Ids are
+// not exported; imported reminders get new ones.
+public final class ReminderTransfer {
+    private static final String HEADER = "# minimal-reminders 1";
+    // About 13 MB of Reminder objects, which the store then holds anyway
+    public static final int MAX_IMPORT = 100000;
+    // Progress is reported after this many reminders
+    private static final int PROGRESS_EVERY = 1000;
+
+    public interface Progress {
+        // "bytes" of the file read or written so far, "reminders" handled
+        void update(long bytes, int reminders);
+    }
+
+    private ReminderTransfer() {
+    }
+
+    // Writes every reminder in the store to "out", which is left open
+    public static int write(ReminderRepository store, OutputStream out, Progress progress)
+            throws IOException {
+        CountingWriter writer = new CountingWriter(
+                new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+        int[] count = {0};
+        StringBuilder line = new StringBuilder();
+        writer.write(HEADER + "\n");
+        try {
+            store.forEach(r -> {
+                line.setLength(0);
+                format(r, line);
+                try {
+                    writer.write(line.append('\n').toString());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (++count[0] % PROGRESS_EVERY == 0 && progress != null) {
+                    progress.update(writer.chars, count[0]);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        if (progress != null) progress.update(writer.chars, count[0]);
+        return count[0];
+    }
+
+    // Parses "in" to the end. Nothing is returned unless every line is valid;
+    // the IOException names the first bad line.
+    public static List<Reminder> read(InputStream in, Progress progress) throws IOException {
+        CountingInputStream counted = new CountingInputStream(in);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(counted, StandardCharsets.UTF_8));
+        List<Reminder> list = new ArrayList<>();
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isEmpty() || line.charAt(0) == '#') continue;
+            if (list.size() == MAX_IMPORT) {
+                throw new IOException("Line " + lineNumber + ": more than " + MAX_IMPORT + " reminders");
+            }
+            try {
+                list.add(parse(line));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+            }
+            if (list.size() % PROGRESS_EVERY == 0 && progress != null) {
+                progress.update(counted.bytes, list.size());
+            }
+        }
+        if (progress != null) progress.update(counted.bytes, list.size());
+        return list;
+    }
+
+    static void format(Reminder r, StringBuilder sb) {
+        if (r.hour < 10) sb.append('0');
+        sb.append(r.hour).append(':');
+        if (r.minute < 10) sb.append('0');
+        sb.append(r.minute).append('\t');
+        for (int day = 0; day < 7; day++) sb.append(r.hasDay(day) ? '1' : '0');
+        sb.append('\t').append(r.enabled ? "on" : "off");
+        sb.append('\t').append(r.tolerance).append('\t');
+        String name = r.name != null ? r.name : "";
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '\t') {
+                sb.append("\\t");
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c == '\r') {
+                sb.append("\\r");
+            } else if (c == '\\') {
+                sb.append("\\\\");
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
+    static Reminder parse(String line) {
+        String[] cols = line.split("\t", 5);
+        if (cols.length != 5) throw new IllegalArgumentException("expected 5 columns");
+
+        Reminder r = new Reminder();
+        String time = cols[0];
+        int colon = time.indexOf(':');
+        if (colon < 0) throw new IllegalArgumentException("bad time \"" + time + "\"");
+        r.hour = number(time.substring(0, colon), 0, 23, "hour");
+        r.minute = number(time.substring(colon + 1), 0, 59, "minute");
+
+        String days = cols[1];
+        if (days.length() != 7) throw new IllegalArgumentException("bad days \"" + days + "\"");
+        for (int day = 0; day < 7; day++) {
+            char c = days.charAt(day);
+            if (c != '0' && c != '1') throw new IllegalArgumentException("bad days \"" + days + "\"");
+            r.setDay(day, c == '1');
+        }
+
+        if (cols[2].equals("on")) {
+            r.enabled = true;
+        } else if (cols[2].equals("off")) {
+            r.enabled = false;
+        } else {
+            throw new IllegalArgumentException("expected on or off, not \"" + cols[2] + "\"");
+        }
+
+        r.tolerance = number(cols[3], 0, Integer.MAX_VALUE, "tolerance");
+        boolean offered = false;
+        for (int t : Reminder.TOLERANCES) offered |= t == r.tolerance;
+        if (!offered) throw new IllegalArgumentException("unsupported tolerance " + r.tolerance);
+
+        String name = cols[4];
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '\\' && i + 1 < name.length()) {
+                char e = name.charAt(++i);
+                sb.append(e == 't' ? '\t' : e == 'n' ? '\n' : e == 'r' ? '\r' : e);
+            } else {
+                sb.append(c);
+            }
+        }
+        r.name = sb.toString();
+        return r;
+    }
+
+    private static int number(String s, int min, int max, String what) {
+        int n;
+        try {
+            n = Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad " + what + " \"" + s + "\"");
+        }
+        if (n < min || n > max) throw new IllegalArgumentException(what + " out of range: " + n);
+        return n;
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long bytes;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) bytes++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) bytes += n;
+            return n;
+        }
+    }
+
+    // Counts characters, which is bytes for the usual ASCII times and names
+    private static final class CountingWriter extends Writer {
+        private final Writer out;
+        long chars;
+
+        CountingWriter(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] buf, int off, int len) throws IOException {
+            out.write(buf, off, len);
+            chars += len;
+        }
+
+        @Override
+        public void write(String s) throws IOException {
+            out.write(s);
+            chars += s.length();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
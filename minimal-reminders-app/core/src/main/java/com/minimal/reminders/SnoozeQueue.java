@@ -0,0 +1,196 @@
+package com.minimal.reminders;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Pending snoozes, in time order. A reminder may have any number of them.
+// ReminderScheduler keeps one alarm armed for the earliest.
+//
+// Saved on every change: a header (magic, version) and then [time varlong]
+// [id varint][name length varint][name UTF-8] per entry. It holds a handful
+// of entries, so it is rewritten whole and kept as sorted arrays; due
+// entries are a prefix. Loading it after a boot is the whole re-arm.
+//
+// Where it is saved is a Storage. On the device that is a small file next to
+// the reminders, fsynced and renamed over the old one: snoozes come a few a
+// day, and one lost to a power cut is a missed reminder. The simulator,
+// which goes through a year of them in seconds, keeps the bytes in memory.
+public class SnoozeQueue {
+    private static final int MAGIC = 0x524d535a; // "RMSZ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    private final Storage storage;
+    private long[] times = new long[8];
+    private int[] ids = new int[8];
+    private String[] names = new String[8];
+    private int size;
+    private boolean loaded;
+
+    public SnoozeQueue(File file) {
+        this(new FileStorage(file));
+    }
+
+    public SnoozeQueue(Storage storage) {
+        this.storage = storage;
+    }
+
+    public interface Storage {
+        // What was last written, or null if nothing was
+        byte[] read() throws IOException;
+
+        // Replaces what was written before, all or nothing
+        void write(byte[] data, int length) throws IOException;
+    }
+
+    public synchronized int size() {
+        load();
+        return size;
+    }
+
+    // Time of the earliest snooze, or -1 if there is none
+    public synchronized long peekTime() {
+        load();
+        return size > 0 ? times[0] : -1;
+    }
+
+    // Adds a snooze for each reminder, due at "time". A reminder that already
+    // has a snooze at that time gets no second one.
+    public synchronized void add(List<Reminder> reminders, long time) {
+        load();
+        boolean changed = false;
+        for (Reminder r : reminders) {
+            changed |= insert(time, r.id, r.name);
+        }
+        if (changed) save();
+    }
+
+    // Removes and returns every snooze due by "now", earliest first. Each
+    // comes back as a Reminder with the id and name it was snoozed with.
+    public synchronized List<Reminder> pollDue(long now) {
+        load();
+        int n = 0;
+        while (n < size && times[n] <= now) n++;
+        List<Reminder> due = new ArrayList<>(n);
+        if (n == 0) return due;
+        for (int i = 0; i < n; i++) {
+            Reminder r = new Reminder();
+            r.id = ids[i];
+            r.name = names[i];
+            due.add(r);
+        }
+        System.arraycopy(times, n, times, 0, size - n);
+        System.arraycopy(ids, n, ids, 0, size - n);
+        System.arraycopy(names, n, names, 0, size - n);
+        Arrays.fill(names, size - n, size, null);
+        size -= n;
+        save();
+        return due;
+    }
+
+    private boolean insert(long time, int id, String name) {
+        // After entries due at the same time, so ties keep snooze order
+        int pos = size;
+        while (pos > 0 && times[pos - 1] > time) pos--;
+        for (int i = pos - 1; i >= 0 && times[i] == time; i--) {
+            if (ids[i] == id) return false;
+        }
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            ids = Arrays.copyOf(ids, size * 2);
+            names = Arrays.copyOf(names, size * 2);
+        }
+        System.arraycopy(times, pos, times, pos + 1, size - pos);
+        System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+        System.arraycopy(names, pos, names, pos + 1, size - pos);
+        times[pos] = time;
+        ids[pos] = id;
+        names[pos] = name;
+        size++;
+        return true;
+    }
+
+    private void load() {
+        if (loaded) return;
+        loaded = true;
+        try {
+            byte[] data = storage.read();
+            if (data == null) return;
+            ReminderCodec.Cursor in = new ReminderCodec.Cursor(data, 0);
+            if (data.length < HEADER_SIZE || in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unknown snooze queue format");
+            }
+            while (in.pos < data.length) {
+                long time = in.readVarlong();
+                int id = in.readVarint();
+                int length = in.readVarint();
+                String name = new String(data, in.pos, length, StandardCharsets.UTF_8);
+                in.pos += length;
+                insert(time, id, name);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Written all or nothing, so this is not a torn write
+            e.printStackTrace();
+            size = 0;
+        }
+    }
+
+    private void save() {
+        ReminderCodec.Buffer out = new ReminderCodec.Buffer(HEADER_SIZE + size * 24);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        for (int i = 0; i < size; i++) {
+            byte[] name = names[i] != null ? names[i].getBytes(StandardCharsets.UTF_8) : new byte[0];
+            out.writeVarlong(times[i]);
+            out.writeVarint(ids[i]);
+            out.writeVarint(name.length);
+            out.write(name, 0, name.length);
+        }
+        try {
+            storage.write(out.array(), out.size());
+        } catch (IOException e) {
+            // The in-memory queue still serves this process
+            e.printStackTrace();
+        }
+    }
+
+    // Rewritten whole (fsynced, then renamed over the old one)
+    public static final class FileStorage implements Storage {
+        private final File file;
+
+        public FileStorage(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public byte[] read() throws IOException {
+            if (!file.exists()) return null;
+            byte[] data = new byte[(int) file.length()];
+            try (FileInputStream in = new FileInputStream(file)) {
+                int n = 0;
+                while (n < data.length) {
+                    int r = in.read(data, n, data.length - n);
+                    if (r < 0) break;
+                    n += r;
+                }
+                return n < data.length ? Arrays.copyOf(data, n) : data;
+            }
+        }
+
+        @Override
+        public void write(byte[] data, int length) throws IOException {
+            File tmp = new File(file.getPath() + ".tmp");
+            try (FileOutputStream fos = new FileOutputStream(tmp)) {
+                fos.write(data, 0, length);
+                fos.getFD().sync();
+            }
+            if (!tmp.renameTo(file)) throw new IOException("Cannot replace " + file);
+        }
+    }
+}
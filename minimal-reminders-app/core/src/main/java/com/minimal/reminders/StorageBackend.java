@@ -0,0 +1,34 @@
+package com.minimal.reminders;
+
+// Where ReminderRepository persists its state. The repository keeps the
+// authoritative copy in memory and tells the backend about each change; "all"
+// is always the state after the change has been applied. upsert and delete
+// may be buffered until sync().
+public interface StorageBackend {
+    // Returned by peek() when the backend cannot answer without a load
+    Reminder UNKNOWN = new Reminder();
+
+    boolean exists();
+
+    void load(IntMap<Reminder> into);
+
+    // Reads one reminder without loading the rest, for a process that has
+    // not loaded yet: the reminder, null if there is none, or UNKNOWN
+    default Reminder peek(int id) {
+        return UNKNOWN;
+    }
+
+    void upsert(Reminder r, IntMap<Reminder> all);
+
+    void delete(int id, IntMap<Reminder> all);
+
+    void replaceAll(IntMap<Reminder> all);
+
+    // Makes every change so far durable
+    void sync(IntMap<Reminder> all);
+
+    long getBytesWritten();
+
+    // Removes all stored data, e.g. once it has been migrated elsewhere
+    void clear();
+}
@@ -0,0 +1,85 @@
+package com.minimal.reminders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Heap held by the reminder list in each in-memory form, measured as the
+// growth in used heap after a full GC:
+//   objects: the repository's IntMap of Reminder objects
+//   columns: the same list as ReminderColumns
+//   loadAll: one more copy, the garbage every loadAll() call leaves behind
+//
+//   ./gradlew :core:heap -Pargs="--reminders 100000"
+//
+// ModelBenchmark times a pass over the list in both forms; with JMH's gc
+// profiler it also shows what each pass allocates.
+public final class HeapUsage {
+    private int reminders = 100000;
+
+    public static void main(String[] args) {
+        HeapUsage heap = new HeapUsage();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].equals("--reminders")) throw new IllegalArgumentException("Unknown option " + args[i]);
+            heap.reminders = Integer.parseInt(args[i + 1]);
+        }
+        heap.run();
+    }
+
+    private void run() {
+        long base = used();
+        IntMap<Reminder> all = generate(reminders);
+        long objects = used() - base;
+
+        base = used();
+        ReminderColumns columns = new ReminderColumns(all);
+        long columnar = used() - base;
+
+        base = used();
+        List<Reminder> copy = new ArrayList<>(all.size());
+        for (int i = 0; i < all.size(); i++) copy.add(all.valueAt(i).copy());
+        long loadAll = used() - base;
+
+        System.out.println("reminders: " + reminders);
+        report("objects", objects);
+        report("columns", columnar);
+        report("loadAll", loadAll);
+        // Keep everything reachable until measured
+        if (columns.size() + copy.size() + all.size() < 0) System.out.println();
+    }
+
+    private void report(String what, long bytes) {
+        System.out.printf("%-9s %,12d bytes, %6.1f per reminder%n", what + ":", bytes,
+                (double) bytes / Math.max(1, reminders));
+    }
+
+    // Same shape as the benchmark data: "Reminder <n>" names, random times
+    private static IntMap<Reminder> generate(int n) {
+        Random rnd = new Random(42);
+        IntMap<Reminder> all = new IntMap<>(n);
+        for (int i = 1; i <= n; i++) {
+            Reminder r = new Reminder();
+            r.id = i;
+            r.name = "Reminder " + i;
+            r.hour = rnd.nextInt(24);
+            r.minute = rnd.nextInt(60);
+            r.days = (byte) (1 + rnd.nextInt(Reminder.ALL_DAYS));
+            r.enabled = rnd.nextInt(10) != 0;
+            all.put(r.id, r);
+        }
+        return all;
+    }
+
+    private static long used() {
+        Runtime rt = Runtime.getRuntime();
+        long before = Long.MAX_VALUE;
+        // Until a collection frees nothing more
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            long now = rt.totalMemory() - rt.freeMemory();
+            if (now >= before) return now;
+            before = now;
+        }
+        return before;
+    }
+}
@@ -0,0 +1,188 @@
+package com.minimal.reminders;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+// Property check of Recurrence against the Calendar code it replaced, in
+// zones with unusual DST (30-minute shifts, transitions at midnight, a
+// skipped day) and locales that start the week on Sunday, Monday and
+// Saturday. Half the cases are random instants over three years; the other
+// half sit within a week of a DST transition, at wall times in and around
+// its gap or overlap.
+//
+// Expected is the old Calendar code, except where it rolled over to the
+// following week with add(WEEK_OF_YEAR), which keeps the old offset: for a
+// wall time in a gap or overlap Recurrence gives what Calendar's set()
+// gives for that date (see Recurrence). Those cases are counted separately.
+// Every result must also be stable: asked again from just before it,
+// Recurrence returns the same instant.
+//
+//   ./gradlew :core:recurrence -Pargs="--cases 20000"
+//
+// Exits with status 1 on any mismatch.
+public final class RecurrenceCheck {
+    private static final long MINUTE = 60 * 1000L;
+    private static final long DAY = 24 * 60 * MINUTE;
+    private static final long START = 1704067200000L; // 2024-01-01T00:00Z
+    private static final long SPAN = 3 * 365 * DAY;
+
+    private static final String[] ZONES = {
+            "Europe/Rome", "America/New_York", "Australia/Lord_Howe", "America/Santiago",
+            "Asia/Tokyo", "Pacific/Apia", "America/Havana", "Africa/Casablanca",
+            "Asia/Tehran", "America/St_Johns", "Pacific/Chatham", "Europe/London",
+            "Asia/Beirut", "America/Asuncion",
+    };
+    private static final Locale[] LOCALES = {
+            Locale.US, Locale.ITALY, Locale.UK, new Locale("ar", "EG"), new Locale("fa", "IR"),
+    };
+    private static final int[] CALENDAR_DAYS = {Calendar.MONDAY, Calendar.TUESDAY, Calendar.WEDNESDAY,
+            Calendar.THURSDAY, Calendar.FRIDAY, Calendar.SATURDAY, Calendar.SUNDAY};
+
+    private int cases = 5000;
+    private long seed = 1;
+
+    private long checked;
+    private long rolledOver;
+    private long mismatches;
+
+    public static void main(String[] args) {
+        RecurrenceCheck check = new RecurrenceCheck();
+        check.parse(args);
+        boolean ok = check.run();
+        System.exit(ok ? 0 : 1);
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String v = args[i + 1];
+            switch (args[i]) {
+                case "--cases": cases = Integer.parseInt(v); break;
+                case "--seed": seed = Long.parseLong(v); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+    }
+
+    private boolean run() {
+        TimeZone defaultZone = TimeZone.getDefault();
+        Locale defaultLocale = Locale.getDefault();
+        Random rnd = new Random(seed);
+        try {
+            for (String zone : ZONES) {
+                List<ZoneOffsetTransition> transitions = transitions(zone);
+                for (Locale locale : LOCALES) {
+                    TimeZone.setDefault(TimeZone.getTimeZone(zone));
+                    Locale.setDefault(locale);
+                    for (int i = 0; i < cases; i++) {
+                        checkCase(rnd, zone, locale, transitions);
+                    }
+                }
+            }
+        } finally {
+            TimeZone.setDefault(defaultZone);
+            Locale.setDefault(defaultLocale);
+        }
+        System.out.println("cases:       " + checked + " (" + ZONES.length + " zones, "
+                + LOCALES.length + " locales, seed " + seed + ")");
+        System.out.println("rolled over: " + rolledOver + " in a gap or overlap, resolved like set()");
+        System.out.println("mismatches:  " + mismatches);
+        return mismatches == 0;
+    }
+
+    private void checkCase(Random rnd, String zone, Locale locale, List<ZoneOffsetTransition> transitions) {
+        long now;
+        int hour;
+        int minute;
+        if (transitions.isEmpty() || rnd.nextBoolean()) {
+            now = START + (long) (rnd.nextDouble() * SPAN);
+            hour = rnd.nextInt(24);
+            minute = rnd.nextInt(60);
+        } else {
+            ZoneOffsetTransition tr = transitions.get(rnd.nextInt(transitions.size()));
+            now = tr.getInstant().toEpochMilli() + (long) ((rnd.nextDouble() * 16 - 8) * DAY);
+            // Wall times from an hour and a half before the transition to
+            // an hour and a half after, in both offsets' terms
+            LocalDateTime around = tr.getDateTimeBefore().plusMinutes(rnd.nextInt(181) - 90);
+            hour = around.getHour();
+            minute = around.getMinute();
+        }
+        // Whole minutes, and the minutes right before and after, are the edges
+        if (rnd.nextBoolean()) now = now - Math.floorMod(now, MINUTE) + (rnd.nextInt(3) - 1) * MINUTE;
+        int day = rnd.nextInt(7);
+
+        long expected = calendar(hour, minute, day, now, false);
+        long actual = Recurrence.nextFireForDay(hour, minute, day, now);
+        checked++;
+        if (actual != expected) {
+            long resolved = calendar(hour, minute, day, now, true);
+            if (actual == resolved) {
+                rolledOver++;
+            } else {
+                report(zone, locale, hour, minute, day, now, expected, actual);
+                return;
+            }
+        }
+        if (Recurrence.nextFireForDay(hour, minute, day, actual - 1) != actual) {
+            report(zone, locale, hour, minute, day, actual - 1, actual,
+                    Recurrence.nextFireForDay(hour, minute, day, actual - 1));
+        }
+    }
+
+    // The Calendar code AlarmScheduler used. With "resolve", the following
+    // week's date gets its wall time set afresh instead of add(WEEK_OF_YEAR).
+    private static long calendar(int hour, int minute, int day, long nowMs, boolean resolve) {
+        Calendar now = Calendar.getInstance();
+        now.setTimeInMillis(nowMs);
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(nowMs);
+        cal.set(Calendar.HOUR_OF_DAY, hour);
+        cal.set(Calendar.MINUTE, minute);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        cal.set(Calendar.DAY_OF_WEEK, CALENDAR_DAYS[day]);
+        if (cal.before(now) || cal.equals(now)) {
+            if (!resolve) {
+                cal.add(Calendar.WEEK_OF_YEAR, 1);
+            } else {
+                int year = cal.get(Calendar.YEAR);
+                int dayOfYear = cal.get(Calendar.DAY_OF_YEAR);
+                cal.clear();
+                cal.set(Calendar.YEAR, year);
+                cal.set(Calendar.DAY_OF_YEAR, dayOfYear);
+                cal.add(Calendar.DAY_OF_YEAR, 7);
+                cal.set(Calendar.HOUR_OF_DAY, hour);
+                cal.set(Calendar.MINUTE, minute);
+            }
+        }
+        return cal.getTimeInMillis();
+    }
+
+    private void report(String zone, Locale locale, int hour, int minute, int day, long now,
+                        long expected, long actual) {
+        mismatches++;
+        if (mismatches > 10) return;
+        System.out.println("MISMATCH " + zone + " " + locale + " " + hour + ":" + minute + " day " + day
+                + " now " + new Date(now) + ": expected " + new Date(expected) + ", got " + new Date(actual));
+    }
+
+    private static List<ZoneOffsetTransition> transitions(String zone) {
+        ZoneRules rules = ZoneId.of(zone).getRules();
+        List<ZoneOffsetTransition> list = new ArrayList<>();
+        Instant end = Instant.ofEpochMilli(START + SPAN);
+        for (ZoneOffsetTransition tr = rules.nextTransition(Instant.ofEpochMilli(START));
+             tr != null && tr.getInstant().isBefore(end); tr = rules.nextTransition(tr.getInstant())) {
+            list.add(tr);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,147 @@
+package com.minimal.reminders;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// Fake alarm service for the simulator: one pending alarm per slot, ordered
+// by trigger time (ties in registration order). Counts every registration
+// and cancellation, which are binder calls on a device.
+//
+// A windowed alarm is held until the end of its window, unless another
+// wakeup comes first once the window has opened: then it rides along (see
+// pollStarted), which is what the real alarm service's batching aims for.
+// As on Android 12 and later, a window shorter than MIN_WINDOW_MS is
+// stretched to it.
+final class SimAlarms implements ReminderScheduler.Alarms {
+    static final class Alarm {
+        final int slot;
+        final long time;
+        final long window;
+        final int reminderId;
+        final String name;
+        final long seq;
+
+        Alarm(int slot, long time, long window, int reminderId, String name, long seq) {
+            this.slot = slot;
+            this.time = time;
+            this.window = window;
+            this.reminderId = reminderId;
+            this.name = name;
+            this.seq = seq;
+        }
+    }
+
+    private final Map<Integer, Alarm> bySlot = new HashMap<>();
+    // Replaced and cancelled alarms stay here until they reach the head or
+    // the queue is rebuilt; bySlot says which entries are live.
+    private PriorityQueue<Alarm> pending = newQueue();
+    // Windowed alarms by window start, including stale ones
+    private PriorityQueue<Alarm> windowed = newWindowedQueue();
+    private int stale;
+    private long seq;
+
+    long sets;
+    long cancels;
+    int maxRegistered;
+
+    @Override
+    public void set(int slot, long triggerAt, long windowMs, int reminderId, String name) {
+        if (windowMs > 0) windowMs = Math.max(windowMs, ReminderScheduler.MIN_WINDOW_MS);
+        Alarm a = new Alarm(slot, triggerAt, windowMs, reminderId, name, seq++);
+        if (bySlot.put(slot, a) != null) stale++;
+        pending.add(a);
+        if (windowMs > 0) windowed.add(a);
+        sets++;
+        maxRegistered = Math.max(maxRegistered, bySlot.size());
+        if (stale > Math.max(4096, bySlot.size() * 2)) rebuild();
+    }
+
+    @Override
+    public void cancel(int slot) {
+        if (bySlot.remove(slot) != null) stale++;
+        cancels++;
+    }
+
+    @Override
+    public boolean isSet(int slot) {
+        return bySlot.containsKey(slot);
+    }
+
+    // Delivery time of the next live alarm (the end of its window), or
+    // Long.MAX_VALUE
+    long peekTime() {
+        Alarm a = head();
+        return a != null ? a.time + a.window : Long.MAX_VALUE;
+    }
+
+    Alarm poll() {
+        Alarm a = head();
+        if (a == null) return null;
+        pending.poll();
+        bySlot.remove(a.slot);
+        return a;
+    }
+
+    // A live windowed alarm whose window has opened by "now", to deliver in
+    // the wakeup that is under way, or null
+    Alarm pollStarted(long now) {
+        while (!windowed.isEmpty() && windowed.peek().time <= now) {
+            Alarm a = windowed.poll();
+            if (bySlot.get(a.slot) == a) {
+                // Its entry in "pending" is stale now
+                bySlot.remove(a.slot);
+                stale++;
+                return a;
+            }
+        }
+        return null;
+    }
+
+    int registered() {
+        return bySlot.size();
+    }
+
+    // Every alarm is dropped, as on a reboot. Returns how many there were.
+    int clear() {
+        int n = bySlot.size();
+        bySlot.clear();
+        pending = newQueue();
+        windowed = newWindowedQueue();
+        stale = 0;
+        return n;
+    }
+
+    private Alarm head() {
+        while (!pending.isEmpty()) {
+            Alarm a = pending.peek();
+            if (bySlot.get(a.slot) == a) return a;
+            pending.poll();
+            stale--;
+        }
+        return null;
+    }
+
+    private void rebuild() {
+        PriorityQueue<Alarm> q = newQueue();
+        q.addAll(bySlot.values());
+        pending = q;
+        windowed = newWindowedQueue();
+        for (Alarm a : bySlot.values()) {
+            if (a.window > 0) windowed.add(a);
+        }
+        stale = 0;
+    }
+
+    private static PriorityQueue<Alarm> newQueue() {
+        return new PriorityQueue<>(1024, (a, b) -> a.time + a.window != b.time + b.window
+                ? Long.compare(a.time + a.window, b.time + b.window)
+                : Long.compare(a.seq, b.seq));
+    }
+
+    private static PriorityQueue<Alarm> newWindowedQueue() {
+        return new PriorityQueue<>(1024, (a, b) -> a.time != b.time
+                ? Long.compare(a.time, b.time)
+                : Long.compare(a.seq, b.seq));
+    }
+}
@@ -0,0 +1,497 @@
+package com.minimal.reminders;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+// Time-warp simulation of the scheduling code. A virtual clock jumps from
+// one alarm to the next; SimAlarms stands in for AlarmManager,
+// MemoryKeyValueStore for SharedPreferences and a byte array for the snooze
+// queue's file, while ReminderScheduler, ReminderRepository and
+// JournalBackend (on real files in a temp dir) are the production classes. Along the way the simulated user edits and
+// toggles reminders and snoozes notifications, and the process is killed
+// and the device rebooted now and then.
+//
+// Every notification is checked against the occurrences the reminders should
+// have produced, so missed and duplicate fires are counted exactly. Reboots
+// take no time: with nothing happening while the device is off, nothing may
+// be missed, snoozes included: they are kept in the SnoozeQueue's storage. A
+// notification may be snoozed again while an earlier snooze is pending, for
+// one of a few durations. The notification burst window is not simulated;
+// every fire counts as notified when the alarm is delivered.
+//
+// Some reminders get a tolerance. A fire later than its reminder's tolerance
+// counts as overdue. The wakeups reported are ReminderScheduler's own count,
+// next to the count exact alarms would have needed.
+//
+//   ./gradlew :core:simulate -Pargs="--reminders 10000 --days 365 --mode single"
+//
+// Exits with status 1 if any fire was missed, duplicated, unexpected or overdue.
+public final class Simulator {
+    private static final long MINUTE = 60 * 1000L;
+    private static final long DAY = 24 * 60 * MINUTE;
+
+    private static final int EVENT_EDIT = 0;
+    private static final int EVENT_KILL = 1;
+    private static final int EVENT_REBOOT = 2;
+
+    private static final long[] SNOOZE_DURATIONS = {5 * MINUTE, 10 * MINUTE, 30 * MINUTE};
+
+    // Settings
+    private int reminderCount = 10000;
+    private int days = 365;
+    private int mode = ReminderScheduler.MODE_SINGLE;
+    private int editsPerDay = 20;
+    private double snoozeRate = 0.05;
+    private double tolerantShare = 0.25;
+    private double killsPerMonth = 4;
+    private double rebootsPerMonth = 1;
+    private long seed = 1;
+    private String zone = "Europe/Rome";
+
+    // Simulated device
+    private final SimAlarms alarms = new SimAlarms();
+    private final MemoryKeyValueStore storePrefs = new MemoryKeyValueStore();
+    private final MemoryKeyValueStore schedulerPrefs = new MemoryKeyValueStore();
+    // The snooze queue's file, in memory. The device fsyncs it on every
+    // change, a few times a day; here that would be most of the run time.
+    // It outlives kills and reboots as the file does.
+    private final SnoozeQueue.Storage snoozeFile = new SnoozeQueue.Storage() {
+        private byte[] data;
+
+        @Override
+        public byte[] read() {
+            return data;
+        }
+
+        @Override
+        public void write(byte[] bytes, int length) {
+            data = Arrays.copyOf(bytes, length);
+        }
+    };
+    private long now;
+    private long bootTime;
+    private int bootCount;
+    private File dir;
+    private JournalBackend backend;
+    private ReminderRepository repo;
+    private ReminderScheduler scheduler;
+    private Random rnd;
+
+    // What the reminders should do: the user's view of each reminder, and
+    // per id the time up to which every occurrence has been accounted for
+    private Reminder[] model;
+    private long[] covered;
+    // Due times of the snoozes pending per reminder id
+    private final Map<Integer, List<Long>> pendingSnoozes = new HashMap<>();
+
+    // Results
+    private long deliveries;
+    private long fires;
+    private long snoozeFires;
+    private long notified;
+    private long missed;
+    private long duplicates;
+    private long unexpected;
+    private long maxLateness;
+    private long overdue;
+    private long lostWindows;
+    private long edits;
+    private long kills;
+    private long reboots;
+    private long bytesRead;
+    private long bytesWritten;
+    private long storeCommits;
+    private long storePeeks;
+    private long alarmCallsSaved;
+
+    public static void main(String[] args) throws Exception {
+        Simulator sim = new Simulator();
+        sim.parse(args);
+        boolean ok = sim.run();
+        System.exit(ok ? 0 : 1);
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String v = args[i + 1];
+            switch (args[i]) {
+                case "--reminders": reminderCount = Integer.parseInt(v); break;
+                case "--days": days = Integer.parseInt(v); break;
+                case "--mode": mode = "per-day".equals(v)
+                        ? ReminderScheduler.MODE_PER_DAY : ReminderScheduler.MODE_SINGLE; break;
+                case "--edits-per-day": editsPerDay = Integer.parseInt(v); break;
+                case "--snooze-rate": snoozeRate = Double.parseDouble(v); break;
+                case "--tolerant-share": tolerantShare = Double.parseDouble(v); break;
+                case "--kills-per-month": killsPerMonth = Double.parseDouble(v); break;
+                case "--reboots-per-month": rebootsPerMonth = Double.parseDouble(v); break;
+                case "--seed": seed = Long.parseLong(v); break;
+                case "--zone": zone = v; break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+    }
+
+    private boolean run() throws Exception {
+        TimeZone.setDefault(TimeZone.getTimeZone(zone));
+        rnd = new Random(seed);
+        dir = new File(System.getProperty("java.io.tmpdir"), "reminders-sim-" + System.nanoTime());
+        if (!dir.mkdirs()) throw new IllegalStateException("Cannot create " + dir);
+        try {
+            long start = LocalDate.of(2025, 1, 1).atStartOfDay(ZoneId.systemDefault())
+                    .toInstant().toEpochMilli();
+            long end = start + days * DAY;
+            now = start;
+            bootTime = start;
+
+            long wallStart = System.nanoTime();
+            setUp();
+            simulate(start, end);
+            countUnfired(end);
+            long wallMs = (System.nanoTime() - wallStart) / 1000000;
+            closeProcess();
+
+            report(wallMs);
+            return missed == 0 && duplicates == 0 && unexpected == 0 && overdue == 0;
+        } finally {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File f : files) f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    private void setUp() {
+        model = new Reminder[reminderCount + 1];
+        covered = new long[reminderCount + 1];
+        List<Reminder> list = new ArrayList<>(reminderCount);
+        for (int id = 1; id <= reminderCount; id++) {
+            Reminder r = new Reminder();
+            r.id = id;
+            r.name = "Reminder " + id;
+            r.hour = rnd.nextInt(24);
+            r.minute = rnd.nextInt(60);
+            r.days = (byte) (1 + rnd.nextInt(Reminder.ALL_DAYS));
+            r.enabled = rnd.nextInt(10) != 0;
+            r.tolerance = randomTolerance();
+            model[id] = r;
+            covered[id] = now;
+            list.add(r.copy());
+        }
+
+        startProcess();
+        repo.saveAll(list);
+        if (mode != scheduler.getMode()) {
+            scheduler.setMode(mode);
+        } else {
+            scheduler.rescheduleAll();
+        }
+    }
+
+    private void simulate(long start, long end) {
+        long[][] events = scriptEvents(start, end);
+        long[] eventTimes = events[0];
+        long[] eventTypes = events[1];
+        int nextEvent = 0;
+
+        while (true) {
+            long alarmTime = alarms.peekTime();
+            long eventTime = nextEvent < eventTimes.length ? eventTimes[nextEvent] : Long.MAX_VALUE;
+            long t = Math.min(alarmTime, eventTime);
+            if (t > end) break;
+            // An alarm set in the past is delivered straight away
+            now = Math.max(now, t);
+
+            if (alarmTime <= eventTime) {
+                deliver(alarms.poll());
+                // Windowed alarms that are open share the wakeup
+                for (SimAlarms.Alarm a; (a = alarms.pollStarted(now)) != null; ) {
+                    deliver(a);
+                }
+            } else {
+                switch ((int) eventTypes[nextEvent]) {
+                    case EVENT_EDIT: editSession(); break;
+                    case EVENT_KILL: kill(); break;
+                    case EVENT_REBOOT: reboot(); break;
+                }
+                nextEvent++;
+            }
+        }
+        now = end;
+    }
+
+    // One edit session a day at a random time, plus kills and reboots spread
+    // uniformly over the run. Returns {times, types} sorted by time.
+    private long[][] scriptEvents(long start, long end) {
+        int killCount = (int) Math.round(days * killsPerMonth / 30);
+        int rebootCount = (int) Math.round(days * rebootsPerMonth / 30);
+        int n = days + killCount + rebootCount;
+        long[] times = new long[n];
+        long[] types = new long[n];
+        int i = 0;
+        for (int d = 0; d < days; d++, i++) {
+            times[i] = start + d * DAY + (long) (rnd.nextDouble() * DAY);
+            types[i] = EVENT_EDIT;
+        }
+        for (int k = 0; k < killCount; k++, i++) {
+            times[i] = start + (long) (rnd.nextDouble() * (end - start));
+            types[i] = EVENT_KILL;
+        }
+        for (int k = 0; k < rebootCount; k++, i++) {
+            times[i] = start + (long) (rnd.nextDouble() * (end - start));
+            types[i] = EVENT_REBOOT;
+        }
+
+        Integer[] order = new Integer[n];
+        for (int k = 0; k < n; k++) order[k] = k;
+        Arrays.sort(order, (a, b) -> Long.compare(times[a], times[b]));
+        long[][] sorted = new long[2][n];
+        for (int k = 0; k < n; k++) {
+            sorted[0][k] = times[order[k]];
+            sorted[1][k] = types[order[k]];
+        }
+        return sorted;
+    }
+
+    // What AlarmReceiver and NotificationActionReceiver do with an alarm
+    private void deliver(SimAlarms.Alarm a) {
+        deliveries++;
+        maxLateness = Math.max(maxLateness, now - (a.time + a.window));
+
+        if (a.slot == ReminderScheduler.SLOT_DUE) {
+            for (Reminder r : scheduler.dispatchDue()) {
+                checkFire(r.id, lastOccurrence(model[r.id], now));
+                notify(r.id, r.name);
+            }
+            return;
+        }
+        if (a.slot == ReminderScheduler.SLOT_SNOOZE) {
+            for (Reminder r : scheduler.dispatchSnoozes()) {
+                checkSnooze(r.id);
+                notify(r.id, r.name);
+            }
+            return;
+        }
+
+        int id = a.reminderId;
+        checkFire(id, a.time);
+        for (Reminder r : scheduler.onReminderAlarm(id, a.name, a.time)) {
+            notify(r.id, r.name);
+        }
+    }
+
+    private void notify(int id, String name) {
+        notified++;
+        if (rnd.nextDouble() < snoozeRate) {
+            long delay = SNOOZE_DURATIONS[rnd.nextInt(SNOOZE_DURATIONS.length)];
+            Reminder r = new Reminder();
+            r.id = id;
+            r.name = name;
+            scheduler.scheduleSnooze(Collections.singletonList(r), delay);
+            List<Long> times = pendingSnoozes.computeIfAbsent(id, k -> new ArrayList<>());
+            // Snoozed twice at the same instant is one snooze
+            if (!times.contains(now + delay)) times.add(now + delay);
+        }
+    }
+
+    // Matches a snooze fire against the earliest snooze pending for the reminder
+    private void checkSnooze(int id) {
+        List<Long> times = pendingSnoozes.get(id);
+        if (times == null || times.isEmpty()) {
+            unexpected++;
+            return;
+        }
+        Long earliest = Collections.min(times);
+        if (earliest > now) {
+            unexpected++;
+            return;
+        }
+        times.remove(earliest);
+        snoozeFires++;
+        maxLateness = Math.max(maxLateness, now - earliest);
+    }
+
+    // Matches a fire against the next occurrence the reminder owes
+    private void checkFire(int id, long occurrence) {
+        Reminder m = model[id];
+        if (!m.enabled || occurrence < 0) {
+            unexpected++;
+            return;
+        }
+        long expected = nextOccurrence(m, covered[id]);
+        while (expected >= 0 && expected < occurrence) {
+            missed++;
+            expected = nextOccurrence(m, expected);
+        }
+        if (expected == occurrence) {
+            fires++;
+            covered[id] = occurrence;
+            if (now - occurrence > m.tolerance * MINUTE) overdue++;
+        } else {
+            duplicates++;
+        }
+    }
+
+    private void countUnfired(long end) {
+        for (int id = 1; id < model.length; id++) {
+            Reminder m = model[id];
+            if (!m.enabled) continue;
+            // Within its tolerance an occurrence is not owed yet
+            long owed = end - m.tolerance * MINUTE;
+            for (long t = nextOccurrence(m, covered[id]); t >= 0 && t <= owed; t = nextOccurrence(m, t)) {
+                missed++;
+            }
+        }
+        for (List<Long> times : pendingSnoozes.values()) {
+            for (long t : times) {
+                if (t <= end) missed++;
+            }
+        }
+    }
+
+    // The user opens the app and edits a few reminders, as EditReminderActivity
+    // and the list's toggle switch do
+    private void editSession() {
+        for (int i = 0; i < editsPerDay; i++) {
+            Reminder m = model[1 + rnd.nextInt(reminderCount)];
+            if (rnd.nextInt(20) == 0) {
+                m.enabled = !m.enabled;
+            } else {
+                m.hour = rnd.nextInt(24);
+                m.minute = rnd.nextInt(60);
+                m.days = (byte) (1 + rnd.nextInt(Reminder.ALL_DAYS));
+                m.tolerance = randomTolerance();
+            }
+            covered[m.id] = now;
+            Reminder copy = m.copy();
+            repo.save(copy);
+            if (copy.enabled) {
+                scheduler.schedule(copy);
+            } else {
+                scheduler.cancel(copy);
+            }
+            edits++;
+        }
+        // The app goes to the background
+        repo.flush();
+    }
+
+    // The process dies; alarms and stored data survive
+    private void kill() {
+        kills++;
+        closeProcess();
+        startProcess();
+    }
+
+    // Alarms are gone; BootReceiver re-arms. A MODE_PER_DAY alarm inside its
+    // window is lost with them; ReminderScheduler re-arms the MODE_SINGLE one
+    // and the snooze queue's itself.
+    private void reboot() {
+        reboots++;
+        for (SimAlarms.Alarm a; (a = alarms.pollStarted(now)) != null; ) {
+            if (a.slot == ReminderScheduler.SLOT_DUE || a.slot == ReminderScheduler.SLOT_SNOOZE) {
+                continue;
+            }
+            lostWindows++;
+            covered[a.reminderId] = Math.max(covered[a.reminderId], a.time);
+        }
+        alarms.clear();
+        closeProcess();
+        bootTime = now;
+        bootCount++;
+        startProcess();
+        scheduler.rearmAfterBoot(bootCount);
+    }
+
+    private void startProcess() {
+        backend = new JournalBackend(dir, null, new RecordSnapshot(new File(dir, "reminders.records")));
+        // The quiet-period timer never fires here; edit sessions flush on
+        // leaving, as the activities do in onStop
+        repo = new ReminderRepository(backend, null, storePrefs, (task, delayMs) -> { });
+        scheduler = new ReminderScheduler(repo, schedulerPrefs, alarms, new ReminderScheduler.Clock() {
+            @Override
+            public long now() {
+                return now;
+            }
+
+            @Override
+            public long elapsed() {
+                return now - bootTime;
+            }
+        }, new ArmedSlots(new File(dir, "armed.bin")), new SnoozeQueue(snoozeFile));
+    }
+
+    private void closeProcess() {
+        bytesRead += backend.getBytesRead();
+        bytesWritten += backend.getBytesWritten();
+        storeCommits += repo.getStats().commits;
+        storePeeks += repo.getStats().peeks;
+        alarmCallsSaved += scheduler.getAlarmCallsSaved();
+    }
+
+    private int randomTolerance() {
+        if (rnd.nextDouble() >= tolerantShare) return 0;
+        return Reminder.TOLERANCES[1 + rnd.nextInt(Reminder.TOLERANCES.length - 1)];
+    }
+
+    private static long nextOccurrence(Reminder r, long after) {
+        return Recurrence.nextFire(r.hour, r.minute, r.days, after);
+    }
+
+    // Latest occurrence at or before "t"
+    private static long lastOccurrence(Reminder r, long t) {
+        long occ = nextOccurrence(r, t - 8 * DAY);
+        if (occ < 0 || occ > t) return -1;
+        for (long next = nextOccurrence(r, occ); next >= 0 && next <= t; next = nextOccurrence(r, occ)) {
+            occ = next;
+        }
+        return occ;
+    }
+
+    private void report(long wallMs) {
+        String modeName = mode == ReminderScheduler.MODE_SINGLE ? "single" : "per-day";
+        double seconds = Math.max(wallMs, 1) / 1000.0;
+        System.out.println("simulated:        " + days + " days, " + reminderCount + " reminders ("
+                + Math.round(tolerantShare * 100) + "% tolerant), mode " + modeName + ", zone " + zone
+                + ", seed " + seed);
+        System.out.println("wall time:        " + wallMs + " ms");
+        System.out.println("throughput:       " + String.format(Locale.ROOT, "%.0f", fires / seconds)
+                + " fires/s, " + String.format(Locale.ROOT, "%.0f", deliveries / seconds)
+                + " alarm deliveries/s");
+        System.out.println("fires:            " + fires + " on time, " + snoozeFires + " snoozes, "
+                + notified + " notified");
+        System.out.println("missed:           " + missed);
+        System.out.println("duplicate:        " + duplicates);
+        System.out.println("unexpected:       " + unexpected);
+        System.out.println("overdue:          " + overdue);
+        System.out.println("max lateness:     " + maxLateness + " ms past the alarm window");
+        System.out.println("alarm deliveries: " + deliveries);
+        System.out.println("wakeups:          " + scheduler.getWakeups() + " ("
+                + String.format(Locale.ROOT, "%.1f", scheduler.getWakeups() / (double) days)
+                + " per day), " + String.format(Locale.ROOT, "%.1f",
+                scheduler.getExactWakeups() / (double) days) + " per day if all exact");
+        System.out.println("alarm calls:      " + alarms.sets + " set, " + alarms.cancels + " cancel ("
+                + String.format(Locale.ROOT, "%.1f", (alarms.sets + alarms.cancels) / (double) days)
+                + " per day), " + alarmCallsSaved + " skipped as already in effect");
+        System.out.println("alarms pending:   " + alarms.registered() + " at end, "
+                + alarms.maxRegistered + " max");
+        System.out.println("user activity:    " + edits + " edits, " + kills + " process kills, "
+                + reboots + " reboots, " + lostWindows + " windowed alarms lost to reboots");
+        System.out.println("store I/O:        " + bytesRead + " bytes read, " + bytesWritten
+                + " bytes written, " + storeCommits + " commits, " + storePeeks + " lookups without a load");
+        System.out.println("settings writes:  "
+                + (storePrefs.getApplies() + schedulerPrefs.getApplies()) + " apply, "
+                + (storePrefs.getCommits() + schedulerPrefs.getCommits()) + " commit, "
+                + (storePrefs.getKeysWritten() + schedulerPrefs.getKeysWritten()) + " keys");
+    }
+}
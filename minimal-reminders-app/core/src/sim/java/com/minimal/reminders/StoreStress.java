@@ -0,0 +1,229 @@
+package com.minimal.reminders;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Hammers one ReminderRepository (on JournalBackend, real files in a temp
+// dir, write-behind on a real timer) from many threads, the way receivers
+// and activities share it on the device. Each thread creates, edits, deletes
+// and reads its own reminders, and all of them increment one shared
+// reminder through update(). A separate thread flushes at random.
+//
+// Checked: every id handed out is unique, every thread reads back its own
+// last write, no increment of the shared reminder is lost, and after a final
+// flush the data reloaded from disk equals the in-memory state.
+//
+//   ./gradlew :core:stress -Pargs="--threads 8 --ops 200000"
+//
+// Exits with status 1 on any error.
+public final class StoreStress {
+    private static final int OWN_MAX = 200;
+
+    private int threads = 8;
+    private int ops = 200000;
+    private long seed = 1;
+
+    private ReminderRepository repo;
+    private int counterId;
+    private final ConcurrentHashMap<Integer, Integer> idOwners = new ConcurrentHashMap<>();
+    private final AtomicLong increments = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    public static void main(String[] args) throws Exception {
+        StoreStress stress = new StoreStress();
+        stress.parse(args);
+        boolean ok = stress.run();
+        System.exit(ok ? 0 : 1);
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String v = args[i + 1];
+            switch (args[i]) {
+                case "--threads": threads = Integer.parseInt(v); break;
+                case "--ops": ops = Integer.parseInt(v); break;
+                case "--seed": seed = Long.parseLong(v); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+    }
+
+    private boolean run() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "reminders-stress-" + System.nanoTime());
+        if (!dir.mkdirs()) throw new IllegalStateException("Cannot create " + dir);
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        MemoryKeyValueStore settings = new MemoryKeyValueStore();
+        try {
+            repo = new ReminderRepository(new JournalBackend(dir), null, settings,
+                    (task, delayMs) -> timer.schedule(task, delayMs, TimeUnit.MILLISECONDS));
+            Reminder counter = reminder(repo.nextId(), 0);
+            counter.name = "0";
+            counterId = counter.id;
+            repo.save(counter);
+
+            long start = System.nanoTime();
+            List<Worker> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(new Worker(t, new Random(seed * 31 + t)));
+            }
+            Thread flusher = new Thread(this::flushAtRandom);
+            flusher.start();
+            for (Worker w : workers) w.start();
+            for (Worker w : workers) w.join();
+            running.set(false);
+            flusher.join();
+            long wallMs = (System.nanoTime() - start) / 1000000;
+
+            repo.flush();
+            check(workers, dir, settings);
+            report(wallMs);
+            return errors.get() == 0;
+        } finally {
+            timer.shutdownNow();
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File f : files) f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    private void flushAtRandom() {
+        Random rnd = new Random(seed);
+        while (running.get()) {
+            repo.flush();
+            try {
+                Thread.sleep(rnd.nextInt(5));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private final class Worker extends Thread {
+        final int index;
+        final Random rnd;
+        // What this thread last wrote for each of its reminders
+        final IntMap<Reminder> own = new IntMap<>();
+        long myIncrements;
+
+        Worker(int index, Random rnd) {
+            this.index = index;
+            this.rnd = rnd;
+        }
+
+        @Override
+        public void run() {
+            for (int op = 0; op < ops; op++) {
+                int roll = rnd.nextInt(100);
+                if (roll < 10 || own.size() == 0) {
+                    if (own.size() < OWN_MAX) create(op);
+                } else if (roll < 40) {
+                    edit(op);
+                } else if (roll < 45) {
+                    Reminder r = own.valueAt(rnd.nextInt(own.size()));
+                    repo.delete(r.id);
+                    own.remove(r.id);
+                } else if (roll < 65) {
+                    Reminder r = repo.update(counterId, x -> x.name = Integer.toString(Integer.parseInt(x.name) + 1));
+                    if (r == null) error("shared reminder vanished");
+                    myIncrements++;
+                } else if (roll < 99) {
+                    Reminder mine = own.valueAt(rnd.nextInt(own.size()));
+                    Reminder read = repo.findById(mine.id);
+                    if (read == null || !read.sameContent(mine)) {
+                        error("thread " + index + " read " + read + " for its write of #" + mine.id);
+                    }
+                } else {
+                    List<Reminder> all = repo.loadAll();
+                    for (int i = 1; i < all.size(); i++) {
+                        if (all.get(i - 1).id >= all.get(i).id) error("loadAll out of order");
+                    }
+                }
+            }
+            increments.addAndGet(myIncrements);
+        }
+
+        void create(int op) {
+            int id = repo.nextId();
+            Integer other = idOwners.putIfAbsent(id, index);
+            if (other != null) error("id " + id + " handed to threads " + other + " and " + index);
+            Reminder r = reminder(id, op);
+            repo.save(r);
+            own.put(id, r);
+        }
+
+        void edit(int op) {
+            Reminder r = own.valueAt(rnd.nextInt(own.size())).copy();
+            r.hour = op % 24;
+            r.minute = rnd.nextInt(60);
+            r.name = "t" + index + "-" + op;
+            r.enabled = rnd.nextBoolean();
+            repo.save(r);
+            own.put(r.id, r);
+        }
+    }
+
+    private void check(List<Worker> workers, File dir, MemoryKeyValueStore settings) {
+        int expected = 1;
+        for (Worker w : workers) {
+            expected += w.own.size();
+            for (int i = 0; i < w.own.size(); i++) {
+                Reminder r = repo.findById(w.own.keyAt(i));
+                if (r == null || !r.sameContent(w.own.valueAt(i))) error("lost write to #" + w.own.keyAt(i));
+            }
+        }
+        List<Reminder> all = repo.loadAll();
+        if (all.size() != expected) error(all.size() + " reminders in memory, expected " + expected);
+
+        Reminder counter = repo.findById(counterId);
+        long count = counter != null ? Long.parseLong(counter.name) : -1;
+        if (count != increments.get()) error("shared counter " + count + ", expected " + increments.get());
+
+        // A new process sees exactly what the old one had
+        ReminderRepository reloaded = new ReminderRepository(new JournalBackend(dir), null, settings);
+        List<Reminder> disk = reloaded.loadAll();
+        if (disk.size() != all.size()) error(disk.size() + " reminders on disk, " + all.size() + " in memory");
+        for (int i = 0; i < Math.min(disk.size(), all.size()); i++) {
+            if (!disk.get(i).sameContent(all.get(i))) error("disk differs at #" + all.get(i).id);
+        }
+        int next = reloaded.nextId();
+        for (Integer id : idOwners.keySet()) {
+            if (id >= next) error("next id " + next + " after restart reuses " + id);
+        }
+    }
+
+    private void report(long wallMs) {
+        long total = (long) threads * ops;
+        System.out.println("threads:   " + threads + " x " + ops + " ops, seed " + seed);
+        System.out.println("wall time: " + wallMs + " ms (" + total * 1000 / Math.max(wallMs, 1) + " ops/s)");
+        System.out.println("ids:       " + idOwners.size() + " handed out");
+        System.out.println("counter:   " + increments.get() + " increments");
+        System.out.println("store:     " + repo.getStats().toString().replace("\n", "\n           "));
+        System.out.println("errors:    " + errors.get());
+    }
+
+    private void error(String message) {
+        if (errors.incrementAndGet() <= 20) System.out.println("ERROR " + message);
+    }
+
+    private static Reminder reminder(int id, int op) {
+        Reminder r = new Reminder();
+        r.id = id;
+        r.name = "new-" + op;
+        r.hour = op % 24;
+        r.minute = op % 60;
+        r.days = Reminder.ALL_DAYS;
+        r.enabled = true;
+        return r;
+    }
+}